@@ -0,0 +1,140 @@
+package com.healthcare.skindetector.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.healthcare.skindetector.models.Diagnosis;
+import com.healthcare.skindetector.models.Patient;
+
+// DatabaseManager insert and query paths against an in-memory H2 database in MySQL mode, through
+// the real pool and schema migrations. H2 has no network round trip, so these numbers show the
+// JDBC and mapping cost on our side; against MySQL each statement adds its round trip on top.
+// Run with -prof gc to see allocation per call.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+    "-Ddb.url=jdbc:h2:mem:benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1", "-Ddb.user=sa", "-Ddb.password=benchmark"})
+@State(Scope.Benchmark)
+public class DatabaseBenchmark {
+
+    private static final String[] LABELS = {"Eczema", "Psoriasis", "Melanoma", "Acne", "Rosacea"};
+
+    @Param({"2000"})
+    public int seededPatients;
+
+    @Param({"5"})
+    public int diagnosesPerPatient;
+
+    private DatabaseManager dbManager;
+    private int firstPatientId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        for (int i = 0; i < seededPatients; i++) {
+            int patientId = dbManager.saveEncounter(patient(i), diagnoses(diagnosesPerPatient));
+            if (i == 0) {
+                firstPatientId = patientId;
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dbManager.close();
+    }
+
+    @Benchmark
+    public int savePatient() throws SQLException {
+        return dbManager.savePatient(patient(ThreadLocalRandom.current().nextInt()));
+    }
+
+    // New patient with three diagnoses in one transaction, as the GUI and API save them
+    @Benchmark
+    public int saveEncounter() throws SQLException {
+        return dbManager.saveEncounter(patient(ThreadLocalRandom.current().nextInt()), diagnoses(3));
+    }
+
+    // One batch-mode commit of 100 diagnoses for existing patients
+    @Benchmark
+    public void saveDiagnosesBatch() throws SQLException {
+        List<Diagnosis> batch = diagnoses(100);
+        for (Diagnosis diagnosis : batch) {
+            diagnosis.setPatientId(randomPatientId());
+        }
+        dbManager.saveDiagnoses(batch);
+    }
+
+    @Benchmark
+    public List<Patient> patientsFirstPage() throws SQLException {
+        return dbManager.getPatientsPage(null, 0, 50);
+    }
+
+    @Benchmark
+    public List<Diagnosis> diagnosesByPatient() throws SQLException {
+        return dbManager.getDiagnosesByPatient(randomPatientId());
+    }
+
+    // Histories for a page of 50 patients in one query
+    @Benchmark
+    public Map<Integer, List<Diagnosis>> diagnosesByPatients() throws SQLException {
+        List<Integer> ids = new ArrayList<>(50);
+        for (int i = 0; i < 50; i++) {
+            ids.add(randomPatientId());
+        }
+        return dbManager.getDiagnosesByPatients(ids);
+    }
+
+    // Read-through history cache; mostly hits once warmed up, except for patients the inserts invalidate
+    @Benchmark
+    public List<Diagnosis> cachedHistory() throws SQLException {
+        return dbManager.getHistoryCache().get(randomPatientId());
+    }
+
+    private int randomPatientId() {
+        return firstPatientId + ThreadLocalRandom.current().nextInt(seededPatients);
+    }
+
+    private static Patient patient(int seed) {
+        Patient patient = new Patient();
+        patient.setName("Benchmark Patient " + seed);
+        patient.setAge(20 + Math.floorMod(seed, 60));
+        patient.setPhone("555-0100");
+        patient.setEmail("benchmark@example.com");
+        return patient;
+    }
+
+    private static List<Diagnosis> diagnoses(int count) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Diagnosis> diagnoses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Diagnosis diagnosis = new Diagnosis();
+            diagnosis.setDiseasePrediction(LABELS[random.nextInt(LABELS.length)]);
+            diagnosis.setConfidenceScore(0.5 + random.nextDouble() * 0.5);
+            diagnosis.setImagePath("/images/benchmark-" + random.nextInt(100_000) + ".jpg");
+            diagnoses.add(diagnosis);
+        }
+        return diagnoses;
+    }
+}
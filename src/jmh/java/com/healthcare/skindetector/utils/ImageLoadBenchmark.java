@@ -0,0 +1,82 @@
+package com.healthcare.skindetector.utils;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Preview decoding as MainGUI does it (fit into 500x400), from webcam size up to a 12 MP phone photo.
+// Run with -prof gc; gc.alloc.rate.norm is what the subsampled decode and scratch buffers keep down.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImageLoadBenchmark {
+
+    @Param({"640x480", "1600x1200", "4032x3024"})
+    public String size;
+
+    @Param({"jpg", "png"})
+    public String format;
+
+    private File imageFile;
+
+    @Setup(Level.Trial)
+    public void createImage() throws IOException {
+        String[] dimensions = size.split("x");
+        int width = Integer.parseInt(dimensions[0]);
+        int height = Integer.parseInt(dimensions[1]);
+
+        // Soft blobs compress roughly like skin photos; random noise would make the decoder look worse than it is
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        Random random = new Random(42);
+        g.setColor(new Color(200, 150, 130));
+        g.fillRect(0, 0, width, height);
+        for (int blob = 0; blob < 400; blob++) {
+            g.setColor(new Color(150 + random.nextInt(100), 80 + random.nextInt(100), 60 + random.nextInt(80)));
+            int diameter = width / 40 + random.nextInt(width / 10);
+            g.fillOval(random.nextInt(width), random.nextInt(height), diameter, diameter);
+        }
+        g.dispose();
+
+        imageFile = Files.createTempFile("image-benchmark", "." + format).toFile();
+        if ("jpg".equals(format)) {
+            Files.write(imageFile.toPath(), ImageUtils.encodeJpeg(image, 0.9f));
+        } else {
+            ImageIO.write(image, format, imageFile);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteImage() throws IOException {
+        Files.deleteIfExists(imageFile.toPath());
+    }
+
+    @Benchmark
+    public BufferedImage loadAndResize() throws IOException {
+        return ImageUtils.loadAndResizeImage(imageFile, 500, 400);
+    }
+}
@@ -0,0 +1,76 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.healthcare.skindetector.models.PredictionResult;
+
+// Prediction throughput of many concurrent callers through real HTTP/2 connections to a
+// zero-latency stand-in on a loopback port, for channel pool sizes and request compression.
+// Loopback bandwidth is effectively unlimited, so gzip shows up here as CPU per call; the bytes it
+// saves pay off on an upload-bound link to Google Cloud instead.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(16)
+@Fork(value = 1, jvmArgsAppend = {
+    "-Dpredictor.backend=standin", "-Dstandin.transport=tcp", "-Dstandin.latencyMillis=0",
+    "-Dstandin.jitterMillis=0", "-Dvertex.cache.enabled=false", "-Dvertex.preprocess.enabled=false"})
+@State(Scope.Benchmark)
+public class GrpcChannelBenchmark {
+
+    @Param({"1", "4"})
+    public int poolSize;
+
+    @Param({"identity", "gzip"})
+    public String compression;
+
+    // JPEG data is close to random, so its Base64 compresses about as well as this does
+    @Param({"262144"})
+    public int imageBytes;
+
+    private VertexAIPredictor predictor;
+    private File imageFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] imageContent = new byte[imageBytes];
+        new Random(42).nextBytes(imageContent);
+        imageFile = Files.createTempFile("grpc-channel-benchmark", ".jpg").toFile();
+        Files.write(imageFile.toPath(), imageContent);
+
+        System.setProperty("vertex.grpc.channelPoolSize", Integer.toString(poolSize));
+        System.setProperty("vertex.grpc.compression", compression);
+        predictor = (VertexAIPredictor) Predictor.fromConfig();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        predictor.close();
+        Files.deleteIfExists(imageFile.toPath());
+    }
+
+    @Benchmark
+    public PredictionResult predict() throws Exception {
+        return predictor.predictSkinDisease(imageFile);
+    }
+}
@@ -0,0 +1,109 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.cloud.aiplatform.v1.PredictRequest;
+import com.google.cloud.aiplatform.v1.PredictResponse;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.healthcare.skindetector.models.PredictionResult;
+
+// The client-side work around one Vertex call, against a zero-latency stand-in so no network or
+// credentials are involved. Preprocessing and the prediction cache are switched off; the image is
+// already upload-sized, so only request building, gRPC marshalling and response parsing remain.
+// Run with -prof gc to see bytes allocated per prediction.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+    "-Dpredictor.backend=standin", "-Dstandin.latencyMillis=0", "-Dstandin.jitterMillis=0",
+    "-Dvertex.cache.enabled=false", "-Dvertex.preprocess.enabled=false"})
+@State(Scope.Benchmark)
+public class PredictionPathBenchmark {
+
+    // A 512 px JPEG after preprocessing is typically 40-120 KB
+    @Param({"65536"})
+    public int imageBytes;
+
+    @Param({"5"})
+    public int labels;
+
+    private VertexAIPredictor predictor;
+    private File imageFile;
+    private byte[] imageContent;
+    private byte[] responseBytes;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        imageContent = new byte[imageBytes];
+        new Random(42).nextBytes(imageContent);
+        imageFile = Files.createTempFile("prediction-benchmark", ".jpg").toFile();
+        Files.write(imageFile.toPath(), imageContent);
+
+        predictor = (VertexAIPredictor) Predictor.fromConfig();
+        responseBytes = classificationResponse(labels).toByteArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        predictor.close();
+        Files.deleteIfExists(imageFile.toPath());
+    }
+
+    // Base64 instance, parameters Struct and PredictRequest, serialized as the gRPC marshaller would
+    @Benchmark
+    public long buildRequest() throws IOException {
+        PredictRequest request = predictor.buildRequest(
+                Collections.singletonList(InstanceEncoder.encode(imageContent)));
+        request.writeTo(OutputStream.nullOutputStream());
+        return request.getSerializedSize();
+    }
+
+    // Wire bytes to PredictionResult, as predictSkinDisease does after the call returns
+    @Benchmark
+    public PredictionResult parseResponse() throws IOException {
+        return predictor.parseSingle(PredictResponse.parseFrom(responseBytes), "stand-in", 0L);
+    }
+
+    // Whole predictSkinDisease call through the in-process gRPC transport
+    @Benchmark
+    public PredictionResult predictRoundTrip() throws Exception {
+        return predictor.predictSkinDisease(imageFile);
+    }
+
+    private static PredictResponse classificationResponse(int labels) {
+        ListValue.Builder names = ListValue.newBuilder();
+        ListValue.Builder confidences = ListValue.newBuilder();
+        for (int i = 0; i < labels; i++) {
+            names.addValues(Value.newBuilder().setStringValue(StandInPredictionService.label(i, 0)));
+            confidences.addValues(Value.newBuilder().setNumberValue(0.9 / (i + 1)));
+        }
+        Value prediction = Value.newBuilder().setStructValue(Struct.newBuilder()
+                .putFields("displayNames", Value.newBuilder().setListValue(names).build())
+                .putFields("confidences", Value.newBuilder().setListValue(confidences).build()))
+                .build();
+        return PredictResponse.newBuilder().addPredictions(prediction).setDeployedModelId("benchmark").build();
+    }
+}
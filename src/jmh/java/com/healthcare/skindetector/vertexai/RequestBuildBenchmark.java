@@ -0,0 +1,89 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.cloud.aiplatform.v1.PredictRequest;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+
+// Compares the original readAllBytes/encodeToString request path with InstanceEncoder.
+// Run with -prof gc and compare gc.alloc.rate.norm (bytes allocated per request).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestBuildBenchmark {
+
+    private static final String ENDPOINT = "projects/p/locations/us-central1/endpoints/e";
+
+    @Param({"1048576", "12582912"})
+    public int imageBytes;
+
+    private Path imageFile;
+
+    @Setup(Level.Trial)
+    public void createImage() throws IOException {
+        byte[] content = new byte[imageBytes];
+        new Random(42).nextBytes(content);
+        imageFile = Files.createTempFile("request-benchmark", ".jpg");
+        Files.write(imageFile, content);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteImage() throws IOException {
+        Files.deleteIfExists(imageFile);
+    }
+
+    @Benchmark
+    public long stringCopyPath() throws IOException {
+        byte[] raw = Files.readAllBytes(imageFile);
+        String encodedImage = Base64.getEncoder().encodeToString(raw);
+
+        Map<String, Value> instanceFields = new HashMap<>();
+        instanceFields.put("content", Value.newBuilder().setStringValue(encodedImage).build());
+        Value instance = Value.newBuilder()
+                .setStructValue(Struct.newBuilder().putAllFields(instanceFields))
+                .build();
+
+        return serialize(instance);
+    }
+
+    @Benchmark
+    public long streamingPath() throws IOException {
+        return serialize(InstanceEncoder.encode(imageFile));
+    }
+
+    // Writes the request the way the gRPC marshaller does, without materialising one big array
+    private static long serialize(Value instance) throws IOException {
+        PredictRequest request = PredictRequest.newBuilder()
+                .setEndpoint(ENDPOINT)
+                .addInstances(instance)
+                .build();
+        request.writeTo(OutputStream.nullOutputStream());
+        return request.getSerializedSize();
+    }
+}
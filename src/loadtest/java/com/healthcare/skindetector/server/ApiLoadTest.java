@@ -0,0 +1,272 @@
+package com.healthcare.skindetector.server;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.healthcare.skindetector.database.DatabaseManager;
+import com.healthcare.skindetector.database.WriteBehindQueue;
+import com.healthcare.skindetector.utils.ImageUtils;
+import com.healthcare.skindetector.vertexai.Predictor;
+
+// Closed-loop load test of ApiServer: each client thread sends one request at a time, mixing
+// predictions, patient saves and history queries. By default the server runs in this JVM against
+// the stand-in prediction backend and an embedded H2 database, so the numbers describe the server
+// itself rather than Vertex AI or MySQL; -Dpredictor.backend=mock takes gRPC out as well. Pass
+// --url to drive a server running elsewhere.
+//
+//   java -cp target/benchmarks.jar com.healthcare.skindetector.server.ApiLoadTest \
+//       --clients 64 --seconds 30 --latency 80 --jitter 40 --errorRate 0.01 --mix 60,20,20
+public class ApiLoadTest {
+
+    private static final String[] OPERATIONS = {"predict", "save", "history"};
+    private static final Pattern PATIENT_ID = Pattern.compile("\"patientId\":(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int clients = Integer.parseInt(options.getOrDefault("clients", "32"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int[] mix = Arrays.stream(options.getOrDefault("mix", "60,20,20").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        if (mix.length != 3 || mix[0] + mix[1] + mix[2] != 100) {
+            throw new IllegalArgumentException("--mix needs three percentages (predict,save,history) adding up to 100");
+        }
+        String url = options.get("url");
+
+        Predictor predictor = null;
+        DatabaseManager dbManager = null;
+        WriteBehindQueue writeQueue = null;
+        ApiServer server = null;
+        if (url == null) {
+            defaultProperty("predictor.backend", "standin");
+            defaultProperty("standin.latencyMillis", options.getOrDefault("latency", "80"));
+            defaultProperty("standin.jitterMillis", options.getOrDefault("jitter", "40"));
+            defaultProperty("standin.errorRate", options.getOrDefault("errorRate", "0"));
+            defaultProperty("db.url", "jdbc:h2:mem:loadtest;MODE=MySQL;DB_CLOSE_DELAY=-1");
+            defaultProperty("db.user", "sa");
+            defaultProperty("db.password", "loadtest");
+            // The test images repeat, so the prediction cache would otherwise answer almost everything
+            defaultProperty("vertex.cache.enabled", "false");
+            // The client-side in-flight cap should not be what this test measures
+            defaultProperty("vertex.async.maxInFlight", String.valueOf(clients));
+
+            predictor = Predictor.fromConfig();
+            dbManager = DatabaseManager.getInstance();
+            dbManager.initializeDatabase();
+            writeQueue = WriteBehindQueue.getInstance();
+            server = new ApiServer(predictor, dbManager, writeQueue, new InetSocketAddress("127.0.0.1", 0));
+            server.start();
+            url = "http://127.0.0.1:" + server.getPort();
+            System.out.printf("Backend %s: %s ms + up to %s ms jitter, error rate %s%n",
+                    System.getProperty("predictor.backend"), System.getProperty("standin.latencyMillis"),
+                    System.getProperty("standin.jitterMillis"), System.getProperty("standin.errorRate"));
+        }
+
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        List<byte[]> images = sampleImages(Integer.parseInt(options.getOrDefault("images", "20")));
+        List<Integer> patientIds = seedPatients(http, url, 50);
+
+        System.out.printf("Load test against %s: %d clients, %d s warmup, %d s measured, mix %s%n",
+                url, clients, warmupSeconds, seconds, Arrays.toString(mix));
+        Recorder[][] recorders = new Recorder[clients][OPERATIONS.length];
+        AtomicBoolean measuring = new AtomicBoolean();
+        long end = System.nanoTime() + (warmupSeconds + seconds) * 1_000_000_000L;
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            Recorder[] own = recorders[c];
+            for (int op = 0; op < OPERATIONS.length; op++) {
+                own[op] = new Recorder();
+            }
+            String baseUrl = url;
+            Thread thread = new Thread(() -> runClient(http, baseUrl, images, patientIds, mix, own, measuring, end),
+                    "load-client-" + c);
+            thread.start();
+            threads.add(thread);
+        }
+        Thread.sleep(warmupSeconds * 1000L);
+        measuring.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        report(recorders, seconds);
+
+        if (server != null) {
+            server.stop();
+            predictor.close();
+            writeQueue.close();
+            dbManager.close();
+        }
+    }
+
+    private static void runClient(HttpClient http, String url, List<byte[]> images, List<Integer> patientIds,
+            int[] mix, Recorder[] recorders, AtomicBoolean measuring, long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (System.nanoTime() < end) {
+            int roll = random.nextInt(100);
+            int op = roll < mix[0] ? 0 : roll < mix[0] + mix[1] ? 1 : 2;
+            HttpRequest request;
+            if (op == 0) {
+                request = HttpRequest.newBuilder(URI.create(url + "/api/predict"))
+                        .header("Content-Type", "image/jpeg")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(images.get(random.nextInt(images.size()))))
+                        .build();
+            } else if (op == 1) {
+                request = saveRequest(url, "Load Test " + random.nextInt(1_000_000));
+            } else if (random.nextBoolean()) {
+                request = HttpRequest.newBuilder(URI.create(url + "/api/patients?limit=50")).GET().build();
+            } else {
+                int patientId = patientIds.get(random.nextInt(patientIds.size()));
+                request = HttpRequest.newBuilder(URI.create(url + "/api/patients/" + patientId + "/diagnoses"))
+                        .GET().build();
+            }
+
+            long start = System.nanoTime();
+            boolean ok;
+            try {
+                ok = http.send(request, HttpResponse.BodyHandlers.ofString()).statusCode() < 300;
+            } catch (IOException e) {
+                ok = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (measuring.get()) {
+                recorders[op].record(System.nanoTime() - start, ok);
+            }
+        }
+    }
+
+    private static HttpRequest saveRequest(String url, String name) {
+        String body = "{\"name\":\"" + name + "\",\"age\":42,\"phone\":\"555-0100\",\"email\":\"load@example.com\","
+                + "\"diagnoses\":[{\"diseasePrediction\":\"Eczema\",\"confidenceScore\":0.87,"
+                + "\"imagePath\":\"/images/load-test.jpg\"}]}";
+        return HttpRequest.newBuilder(URI.create(url + "/api/patients"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private static List<Integer> seedPatients(HttpClient http, String url, int count) throws Exception {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            HttpResponse<String> response = http.send(saveRequest(url, "Seed Patient " + i),
+                    HttpResponse.BodyHandlers.ofString());
+            Matcher matcher = PATIENT_ID.matcher(response.body());
+            if (response.statusCode() != 201 || !matcher.find()) {
+                throw new IllegalStateException("Could not seed patients: " + response.statusCode() + " "
+                        + response.body());
+            }
+            ids.add(Integer.parseInt(matcher.group(1)));
+        }
+        return ids;
+    }
+
+    // Camera-sized JPEGs with enough texture that preprocessing does real work
+    private static List<byte[]> sampleImages(int count) throws IOException {
+        Random random = new Random(42);
+        List<byte[]> images = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BufferedImage image = new BufferedImage(1600, 1200, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            for (int blob = 0; blob < 400; blob++) {
+                g.setColor(new Color(150 + random.nextInt(100), 80 + random.nextInt(100), 60 + random.nextInt(80)));
+                g.fillOval(random.nextInt(1600), random.nextInt(1200), 10 + random.nextInt(120), 10 + random.nextInt(120));
+            }
+            g.dispose();
+            images.add(ImageUtils.encodeJpeg(image, 0.9f));
+        }
+        return images;
+    }
+
+    private static void report(Recorder[][] recorders, int seconds) {
+        System.out.printf("%n%-8s %9s %7s %9s %8s %8s %8s %8s%n",
+                "op", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        long totalRequests = 0;
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            Recorder merged = new Recorder();
+            for (Recorder[] client : recorders) {
+                merged.addAll(client[op]);
+            }
+            long[] latencies = merged.sorted();
+            totalRequests += latencies.length;
+            System.out.printf("%-8s %9d %7d %9.1f %8.1f %8.1f %8.1f %8.1f%n",
+                    OPERATIONS[op], latencies.length, merged.errors, (double) latencies.length / seconds,
+                    percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                    percentile(latencies, 1.0));
+        }
+        System.out.printf("%-8s %9d %7s %9.1f%n", "total", totalRequests, "", (double) totalRequests / seconds);
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+
+    private static void defaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+
+    // Latencies of one operation from one client thread; merged after the run
+    private static final class Recorder {
+        private long[] latencies = new long[1024];
+        private int count;
+        private long errors;
+
+        void record(long nanos, boolean ok) {
+            if (!ok) {
+                errors++;
+            }
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+
+        void addAll(Recorder other) {
+            for (int i = 0; i < other.count; i++) {
+                record(other.latencies[i], true);
+            }
+            errors += other.errors;
+        }
+
+        long[] sorted() {
+            long[] copy = Arrays.copyOf(latencies, count);
+            Arrays.sort(copy);
+            return copy;
+        }
+    }
+}
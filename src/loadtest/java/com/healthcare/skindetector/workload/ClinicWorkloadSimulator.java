@@ -0,0 +1,473 @@
+package com.healthcare.skindetector.workload;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import com.healthcare.skindetector.database.DatabaseManager;
+import com.healthcare.skindetector.database.WriteBehindQueue;
+import com.healthcare.skindetector.models.Diagnosis;
+import com.healthcare.skindetector.models.Patient;
+import com.healthcare.skindetector.utils.ImageUtils;
+import com.healthcare.skindetector.vertexai.Predictor;
+
+// Open-loop simulation of a clinic: exam rooms submit uploads, analyses, saves and history lookups
+// at Poisson-distributed arrival times, whether or not earlier work has finished. Latency is
+// measured from each operation's scheduled arrival, so time spent queueing behind a slow system
+// is counted instead of hidden (no coordinated omission). Runs in-process against the prediction
+// backend from predictor.backend (the stand-in by default) and an embedded H2 database.
+//
+//   java -cp target/benchmarks.jar com.healthcare.skindetector.workload.ClinicWorkloadSimulator \
+//       --rooms 30 --roomRate 0.2 --seconds 60 --mix 20,35,25,20
+//
+// --saturate raises the arrival rate step by step until the system falls behind, then narrows the
+// range down to the highest rate it still sustains within --slo milliseconds at p99.
+//
+// --slowRate 0.02 --slowMillis 3000 makes 2% of stand-in predictions stall, to compare the analyze
+// tail with and without -Dvertex.hedge.enabled=true.
+public class ClinicWorkloadSimulator {
+
+    private static final String[] OPERATIONS = {"upload", "analyze", "save", "history"};
+    private static final int UPLOAD = 0;
+    private static final int ANALYZE = 1;
+    private static final int SAVE = 2;
+    private static final int HISTORY = 3;
+    private static final String[] LABELS = {"Eczema", "Psoriasis", "Melanoma", "Acne", "Rosacea"};
+    // Anything slower is clamped; at that point the run has long since failed its SLO
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(10);
+
+    private final Predictor predictor;
+    private final DatabaseManager dbManager;
+    private final WriteBehindQueue writeQueue;
+    private final List<byte[]> imageBytes;
+    private final List<File> imageFiles;
+    private final Path uploadDir;
+    private final List<Integer> patientIds;
+    private final int[] mix;
+    private final int maxOutstanding;
+    private final ExecutorService workers;
+
+    private final Recorder[] recorders = new Recorder[OPERATIONS.length];
+    private final AtomicLong[] errors = new AtomicLong[OPERATIONS.length];
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong completed = new AtomicLong();
+
+    ClinicWorkloadSimulator(Predictor predictor, DatabaseManager dbManager, WriteBehindQueue writeQueue,
+            List<byte[]> imageBytes, Path workDir, List<Integer> patientIds, int[] mix, int threads,
+            int maxOutstanding) throws IOException {
+        this.predictor = predictor;
+        this.dbManager = dbManager;
+        this.writeQueue = writeQueue;
+        this.imageBytes = imageBytes;
+        this.patientIds = patientIds;
+        this.mix = mix;
+        this.maxOutstanding = maxOutstanding;
+        this.uploadDir = Files.createDirectories(workDir.resolve("uploads"));
+        this.imageFiles = new ArrayList<>();
+        for (int i = 0; i < imageBytes.size(); i++) {
+            Path image = workDir.resolve("image-" + i + ".jpg");
+            Files.write(image, imageBytes.get(i));
+            imageFiles.add(image.toFile());
+        }
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            recorders[op] = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+            errors[op] = new AtomicLong();
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "clinic-worker-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int rooms = Integer.parseInt(options.getOrDefault("rooms", "30"));
+        double roomRate = Double.parseDouble(options.getOrDefault("roomRate", "0.2"));
+        int seconds = Integer.parseInt(options.getOrDefault("seconds", "30"));
+        int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "32"));
+        int maxOutstanding = Integer.parseInt(options.getOrDefault("maxOutstanding", "2000"));
+        long sloMillis = Long.parseLong(options.getOrDefault("slo", "2000"));
+        double maxErrorRate = Double.parseDouble(options.getOrDefault("maxErrorRate", "0.01"));
+        int[] mix = Arrays.stream(options.getOrDefault("mix", "20,35,25,20").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        if (mix.length != OPERATIONS.length || Arrays.stream(mix).sum() != 100) {
+            throw new IllegalArgumentException("--mix needs four percentages (upload,analyze,save,history) adding up to 100");
+        }
+
+        defaultProperty("predictor.backend", "standin");
+        defaultProperty("standin.latencyMillis", options.getOrDefault("latency", "300"));
+        defaultProperty("standin.jitterMillis", options.getOrDefault("jitter", "200"));
+        defaultProperty("standin.errorRate", options.getOrDefault("errorRate", "0"));
+        defaultProperty("standin.slowRate", options.getOrDefault("slowRate", "0"));
+        defaultProperty("standin.slowMillis", options.getOrDefault("slowMillis", "3000"));
+        defaultProperty("db.url", "jdbc:h2:mem:clinic;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        defaultProperty("db.user", "sa");
+        defaultProperty("db.password", "clinic");
+        // Every room photographs new lesions, so repeated sample images must not be answered from the cache
+        defaultProperty("vertex.cache.enabled", "false");
+        // The prediction in-flight cap is a deployment setting; pass -Dvertex.async.maxInFlight to size it
+        defaultProperty("vertex.async.maxInFlight", String.valueOf(threads));
+
+        Path workDir = Files.createTempDirectory("clinic-workload");
+        Predictor predictor = Predictor.fromConfig();
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        WriteBehindQueue writeQueue = WriteBehindQueue.getInstance();
+        try {
+            List<Integer> patientIds = seedPatients(dbManager, 200);
+            ClinicWorkloadSimulator simulator = new ClinicWorkloadSimulator(predictor, dbManager, writeQueue,
+                    sampleImages(Integer.parseInt(options.getOrDefault("images", "20"))), workDir, patientIds,
+                    mix, threads, maxOutstanding);
+
+            double rate = rooms * roomRate;
+            System.out.printf("Backend %s, %d worker threads, mix %s (upload,analyze,save,history)%n",
+                    System.getProperty("predictor.backend"), threads, Arrays.toString(mix));
+            if (warmupSeconds > 0) {
+                System.out.printf("Warming up for %d s at %.1f ops/s%n", warmupSeconds, rate);
+                simulator.runStep(rate, warmupSeconds);
+            }
+
+            if (options.containsKey("saturate")) {
+                double growth = Double.parseDouble(options.getOrDefault("growth", "1.5"));
+                int refineSteps = Integer.parseInt(options.getOrDefault("refine", "3"));
+                simulator.findSaturation(rate, growth, refineSteps, seconds, sloMillis, maxErrorRate, roomRate);
+            } else {
+                System.out.printf("%n%d rooms at %.2f ops/s each: %.1f ops/s for %d s%n", rooms, roomRate, rate, seconds);
+                simulator.runStep(rate, seconds).print(sloMillis, maxErrorRate);
+            }
+            simulator.close();
+        } finally {
+            predictor.close();
+            writeQueue.close();
+            dbManager.close();
+            deleteRecursively(workDir);
+        }
+    }
+
+    // Geometric ramp until a step fails, then bisection between the last passing and first failing rate
+    void findSaturation(double startRate, double growth, int refineSteps, int seconds, long sloMillis,
+            double maxErrorRate, double roomRate) throws InterruptedException {
+        double lastGood = 0;
+        double firstBad = 0;
+        double rate = startRate;
+        for (int step = 0; step < 20 && firstBad == 0; step++) {
+            System.out.printf("%nOffering %.1f ops/s for %d s%n", rate, seconds);
+            StepResult result = runStep(rate, seconds);
+            result.print(sloMillis, maxErrorRate);
+            if (result.sustained(sloMillis, maxErrorRate)) {
+                lastGood = rate;
+                rate *= growth;
+            } else {
+                firstBad = rate;
+            }
+        }
+        for (int step = 0; step < refineSteps && lastGood > 0 && firstBad > 0; step++) {
+            rate = (lastGood + firstBad) / 2;
+            System.out.printf("%nOffering %.1f ops/s for %d s%n", rate, seconds);
+            StepResult result = runStep(rate, seconds);
+            result.print(sloMillis, maxErrorRate);
+            if (result.sustained(sloMillis, maxErrorRate)) {
+                lastGood = rate;
+            } else {
+                firstBad = rate;
+            }
+        }
+
+        if (lastGood == 0) {
+            System.out.printf("%nNot sustained even at %.1f ops/s; lower --roomRate or --rooms%n", startRate);
+        } else if (firstBad == 0) {
+            System.out.printf("%nStill sustained at %.1f ops/s; the ramp stopped before saturating%n", lastGood);
+        } else {
+            System.out.printf("%nSaturation throughput: about %.1f ops/s (failed at %.1f), or %d rooms at %.2f ops/s each%n",
+                    lastGood, firstBad, (int) (lastGood / roomRate), roomRate);
+        }
+    }
+
+    // Offers Poisson arrivals at ratePerSecond for the given time, then waits for the stragglers so
+    // the next step starts from an idle system
+    StepResult runStep(double ratePerSecond, int seconds) throws InterruptedException {
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            recorders[op].getIntervalHistogram();
+            errors[op].set(0);
+        }
+        long completedBefore = completed.get();
+        long offered = 0;
+        long dropped = 0;
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        long next = start;
+        while (true) {
+            next += (long) (-Math.log(1 - random.nextDouble()) / ratePerSecond * 1e9);
+            if (next >= end) {
+                break;
+            }
+            long wait;
+            while ((wait = next - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            offered++;
+            // A bounded backlog keeps an overloaded run from exhausting the heap; drops fail the step
+            if (outstanding.get() >= maxOutstanding) {
+                dropped++;
+                continue;
+            }
+            outstanding.incrementAndGet();
+            int op = pickOperation(random);
+            long scheduled = next;
+            workers.execute(() -> execute(op, scheduled));
+        }
+        long wait;
+        while ((wait = end - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        long completedInWindow = completed.get() - completedBefore;
+        int backlog = outstanding.get();
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+
+        Histogram[] histograms = new Histogram[OPERATIONS.length];
+        long[] errorCounts = new long[OPERATIONS.length];
+        for (int op = 0; op < OPERATIONS.length; op++) {
+            histograms[op] = recorders[op].getIntervalHistogram();
+            errorCounts[op] = errors[op].get();
+        }
+        return new StepResult(ratePerSecond, seconds, offered, dropped, completedInWindow, backlog, histograms,
+                errorCounts);
+    }
+
+    private int pickOperation(ThreadLocalRandom random) {
+        int roll = random.nextInt(100);
+        int op = 0;
+        for (int threshold = mix[0]; roll >= threshold; threshold += mix[op]) {
+            op++;
+        }
+        return op;
+    }
+
+    private void execute(int op, long scheduledNanos) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            switch (op) {
+                case UPLOAD:
+                    upload(imageBytes.get(random.nextInt(imageBytes.size())));
+                    finish(op, scheduledNanos, null);
+                    break;
+                case ANALYZE:
+                    predictor.predictSkinDiseaseAsync(imageFiles.get(random.nextInt(imageFiles.size())))
+                            .whenComplete((result, error) -> finish(op, scheduledNanos, error));
+                    break;
+                case SAVE:
+                    save(random).whenComplete((patientId, error) -> finish(op, scheduledNanos, error));
+                    break;
+                case HISTORY:
+                    dbManager.getHistoryCache().get(patientIds.get(random.nextInt(patientIds.size())));
+                    finish(op, scheduledNanos, null);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation " + op);
+            }
+        } catch (Exception e) {
+            finish(op, scheduledNanos, e);
+        }
+    }
+
+    // The photo arrives from the room's camera: stored, then decoded for the preview pane
+    private void upload(byte[] image) throws IOException {
+        Path stored = Files.createTempFile(uploadDir, "upload", ".jpg");
+        try {
+            Files.write(stored, image);
+            ImageUtils.loadAndResizeImage(stored.toFile(), 500, 400);
+        } finally {
+            Files.deleteIfExists(stored);
+        }
+    }
+
+    // Same path as the GUI's save button
+    private CompletableFuture<Integer> save(ThreadLocalRandom random) {
+        Patient patient = new Patient();
+        patient.setName("Clinic Patient " + random.nextInt(1_000_000));
+        patient.setAge(18 + random.nextInt(70));
+        patient.setPhone("555-0100");
+        patient.setEmail("clinic@example.com");
+
+        Diagnosis diagnosis = new Diagnosis();
+        diagnosis.setDiseasePrediction(LABELS[random.nextInt(LABELS.length)]);
+        diagnosis.setConfidenceScore(0.5 + random.nextDouble() * 0.5);
+        diagnosis.setImagePath("/images/clinic-" + random.nextInt(1_000_000) + ".jpg");
+        return writeQueue.submit(patient, Collections.singletonList(diagnosis));
+    }
+
+    private void finish(int op, long scheduledNanos, Throwable error) {
+        long micros = (System.nanoTime() - scheduledNanos) / 1000;
+        recorders[op].recordValue(Math.min(micros, HIGHEST_TRACKABLE_MICROS));
+        if (error != null) {
+            errors[op].incrementAndGet();
+        }
+        completed.incrementAndGet();
+        outstanding.decrementAndGet();
+    }
+
+    void close() {
+        workers.shutdownNow();
+    }
+
+    // What one step measured: offered versus completed load and per-operation latency
+    static final class StepResult {
+        final double offeredRate;
+        final int seconds;
+        final long offered;
+        final long dropped;
+        final long completedInWindow;
+        final int backlog;
+        final Histogram[] histograms;
+        final long[] errors;
+
+        StepResult(double offeredRate, int seconds, long offered, long dropped, long completedInWindow, int backlog,
+                Histogram[] histograms, long[] errors) {
+            this.offeredRate = offeredRate;
+            this.seconds = seconds;
+            this.offered = offered;
+            this.dropped = dropped;
+            this.completedInWindow = completedInWindow;
+            this.backlog = backlog;
+            this.histograms = histograms;
+            this.errors = errors;
+        }
+
+        double achievedRate() {
+            return (double) completedInWindow / seconds;
+        }
+
+        long totalErrors() {
+            return Arrays.stream(errors).sum();
+        }
+
+        long worstP99Micros() {
+            return Arrays.stream(histograms).mapToLong(h -> h.getValueAtPercentile(99)).max().orElse(0);
+        }
+
+        // Keeping up means: nothing dropped, no more left in flight at the end than arrives within
+        // one SLO (a growing queue would exceed that), few errors and every p99 within the SLO
+        boolean sustained(long sloMillis, double maxErrorRate) {
+            long finished = Arrays.stream(histograms).mapToLong(Histogram::getTotalCount).sum();
+            return dropped == 0
+                    && backlog <= (double) offered / seconds * sloMillis / 1000.0
+                    && totalErrors() <= maxErrorRate * Math.max(1, finished)
+                    && worstP99Micros() <= TimeUnit.MILLISECONDS.toMicros(sloMillis);
+        }
+
+        void print(long sloMillis, double maxErrorRate) {
+            System.out.printf("%-8s %8s %7s %9s %9s %9s %9s%n",
+                    "op", "count", "errors", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+            for (int op = 0; op < OPERATIONS.length; op++) {
+                Histogram h = histograms[op];
+                System.out.printf("%-8s %8d %7d %9.1f %9.1f %9.1f %9.1f%n", OPERATIONS[op], h.getTotalCount(),
+                        errors[op], h.getValueAtPercentile(50) / 1000.0, h.getValueAtPercentile(99) / 1000.0,
+                        h.getValueAtPercentile(99.9) / 1000.0, h.getMaxValue() / 1000.0);
+            }
+            System.out.printf("offered %.1f ops/s (%d arrivals), completed %.1f ops/s, backlog at end %d, dropped %d -> %s%n",
+                    (double) offered / seconds, offered, achievedRate(), backlog, dropped,
+                    sustained(sloMillis, maxErrorRate) ? "sustained" : "NOT sustained");
+        }
+    }
+
+    private static List<Integer> seedPatients(DatabaseManager dbManager, int count) throws Exception {
+        Random random = new Random(7);
+        List<Integer> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Patient patient = new Patient();
+            patient.setName("Seed Patient " + i);
+            patient.setAge(18 + random.nextInt(70));
+            List<Diagnosis> history = new ArrayList<>();
+            for (int d = 0; d < 3; d++) {
+                Diagnosis diagnosis = new Diagnosis();
+                diagnosis.setDiseasePrediction(LABELS[random.nextInt(LABELS.length)]);
+                diagnosis.setConfidenceScore(0.5 + random.nextDouble() * 0.5);
+                diagnosis.setImagePath("/images/seed-" + i + "-" + d + ".jpg");
+                history.add(diagnosis);
+            }
+            ids.add(dbManager.saveEncounter(patient, history));
+        }
+        return ids;
+    }
+
+    // Camera-sized JPEGs with enough texture that decoding and preprocessing do real work
+    private static List<byte[]> sampleImages(int count) throws IOException {
+        Random random = new Random(42);
+        List<byte[]> images = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            BufferedImage image = new BufferedImage(1600, 1200, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            for (int blob = 0; blob < 400; blob++) {
+                g.setColor(new Color(150 + random.nextInt(100), 80 + random.nextInt(100), 60 + random.nextInt(80)));
+                g.fillOval(random.nextInt(1600), random.nextInt(1200), 10 + random.nextInt(120), 10 + random.nextInt(120));
+            }
+            g.dispose();
+            images.add(ImageUtils.encodeJpeg(image, 0.9f));
+        }
+        return images;
+    }
+
+    private static void deleteRecursively(Path dir) throws IOException {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    // --saturate takes no value; every other option is --name value
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            }
+            String name = args[i].substring(2);
+            if (name.equals("saturate")) {
+                options.put(name, "true");
+            } else if (i + 1 < args.length) {
+                options.put(name, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Missing value for " + args[i]);
+            }
+        }
+        return options;
+    }
+
+    private static void defaultProperty(String key, String value) {
+        if (System.getProperty(key) == null) {
+            System.setProperty(key, value);
+        }
+    }
+}
@@ -1,19 +1,55 @@
 package com.healthcare.skindetector;
 
+import com.healthcare.skindetector.batch.BatchAnalyzer;
 import com.healthcare.skindetector.gui.MainGUI;
+import com.healthcare.skindetector.ingest.WatchFolderIngest;
+import com.healthcare.skindetector.metrics.MetricsRegistry;
+import com.healthcare.skindetector.server.ApiServer;
+import com.healthcare.skindetector.utils.FlightRecording;
 import com.healthcare.skindetector.database.DatabaseManager;
+import com.healthcare.skindetector.database.WriteBehindQueue;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
+import java.util.Arrays;
 
 public class SkinDiseaseDetectorApp {
     public static void main(String[] args) {
+        FlightRecording.startFromConfig();
+        MetricsRegistry.getInstance().startExportFromConfig();
+        if (args.length > 0 && args[0].equals("--batch")) {
+            System.exit(BatchAnalyzer.run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        if (args.length > 0 && args[0].equals("--watch")) {
+            // Returns once shutdown hooks are running, where System.exit would block
+            int status = WatchFolderIngest.run(Arrays.copyOfRange(args, 1, args.length));
+            if (status != 0) {
+                System.exit(status);
+            }
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            // The HTTP dispatcher thread keeps the JVM running after main returns
+            int status = ApiServer.run(Arrays.copyOfRange(args, 1, args.length));
+            if (status != 0) {
+                System.exit(status);
+            }
+            return;
+        }
+
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
         } catch (Exception e) {
             e.printStackTrace();
         }
 
-        DatabaseManager.getInstance().initializeDatabase();
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        WriteBehindQueue writeQueue = WriteBehindQueue.getInstance();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            // Flush pending saves before the pool goes away
+            writeQueue.close();
+            dbManager.close();
+        }, "db-shutdown"));
 
         SwingUtilities.invokeLater(() -> new MainGUI().setVisible(true));
     }
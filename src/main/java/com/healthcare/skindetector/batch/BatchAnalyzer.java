@@ -0,0 +1,515 @@
+package com.healthcare.skindetector.batch;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import com.healthcare.skindetector.database.DatabaseManager;
+import com.healthcare.skindetector.models.Diagnosis;
+import com.healthcare.skindetector.models.PredictionResult;
+import com.healthcare.skindetector.utils.AppConfig;
+import com.healthcare.skindetector.utils.ImageUtils;
+import com.healthcare.skindetector.vertexai.Predictor;
+import com.healthcare.skindetector.vertexai.PreparedInstance;
+
+// Headless analysis of a directory tree of images. Files flow through three stages connected by
+// bounded queues: decode/preprocess on every core, batched prediction on several concurrent
+// requests, and a single writer that persists each group and appends it to the output and the
+// checkpoint. A full queue blocks the stage before it, so a slow endpoint or database throttles
+// decoding instead of filling the heap.
+//
+// The checkpoint lists every image whose result was written; a rerun skips them. Entries are
+// appended after the output, so a crash can repeat at most the last group but never lose one. A
+// resumed run does not save a diagnosis again for an image the patient already has one for, so
+// that repeated group adds no duplicate rows.
+public class BatchAnalyzer {
+
+    private static final String USAGE = "Usage: --batch <image-dir> [--output results.jsonl|results.csv]"
+            + " [--checkpoint file] [--patient <patient-id>]";
+
+    // Passed along each queue once the stage before it has finished
+    private static final Item END = new Item(null);
+
+    private final Predictor predictor;
+    private final DatabaseManager dbManager;
+    private final Integer patientId;
+    private final Path root;
+    private final Path output;
+    private final Path checkpoint;
+    private final boolean csv;
+
+    private final int prepareThreads = AppConfig.getInt("batch.prepareThreads",
+            Runtime.getRuntime().availableProcessors());
+    private final int predictThreads = AppConfig.getInt("batch.predictThreads", 4);
+    private final int queueCapacity = AppConfig.getInt("batch.queueCapacity", 64);
+    private final long batchWaitNanos = TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("batch.maxWaitMillis", 50L));
+    private final int writeGroupSize = AppConfig.getInt("batch.writeGroupSize", 100);
+
+    private final BlockingQueue<Item> toPrepare;
+    private final BlockingQueue<Item> toPredict;
+    private final BlockingQueue<Item> toWrite;
+    private final AtomicInteger preparersLeft = new AtomicInteger();
+    private final AtomicInteger predictorsLeft = new AtomicInteger();
+
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private volatile Exception writerFailure;
+    // Image paths already saved for the patient when resuming; only read by the writer
+    private Set<String> alreadySaved = Collections.emptySet();
+
+    // dbManager and patientId may be null to only write the output file
+    public BatchAnalyzer(Predictor predictor, DatabaseManager dbManager, Integer patientId,
+            Path root, Path output, Path checkpoint) {
+        this.predictor = predictor;
+        this.dbManager = dbManager;
+        this.patientId = patientId;
+        this.root = root;
+        this.output = output;
+        this.checkpoint = checkpoint;
+        this.csv = output.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+        this.toPrepare = new ArrayBlockingQueue<>(queueCapacity);
+        this.toPredict = new ArrayBlockingQueue<>(queueCapacity);
+        this.toWrite = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    // Command line entry point; args are everything after --batch. Returns the process exit code.
+    public static int run(String[] args) {
+        Path root = null;
+        Path output = Paths.get("batch-results.jsonl");
+        Path checkpoint = null;
+        Integer patientId = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--output": output = Paths.get(args[++i]); break;
+                    case "--checkpoint": checkpoint = Paths.get(args[++i]); break;
+                    case "--patient": patientId = Integer.parseInt(args[++i]); break;
+                    default:
+                        if (args[i].startsWith("--") || root != null) {
+                            throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                        }
+                        root = Paths.get(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Missing option value");
+            root = null;
+        }
+        if (root == null || !Files.isDirectory(root)) {
+            System.err.println(USAGE);
+            return 2;
+        }
+        if (checkpoint == null) {
+            checkpoint = Paths.get(output + ".checkpoint");
+        }
+
+        DatabaseManager dbManager = null;
+        if (patientId != null) {
+            dbManager = DatabaseManager.getInstance();
+            dbManager.initializeDatabase();
+        }
+        Predictor predictor = Predictor.fromConfig();
+        try {
+            BatchAnalyzer analyzer = new BatchAnalyzer(predictor, dbManager, patientId, root, output, checkpoint);
+            return analyzer.analyze() ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Batch analysis failed: " + e.getMessage());
+            return 1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        } finally {
+            predictor.close();
+            if (dbManager != null) {
+                dbManager.close();
+            }
+        }
+    }
+
+    // Returns false if any image failed; those images are not checkpointed and are retried next run
+    public boolean analyze() throws IOException, InterruptedException {
+        // The checkpoint is created when a run starts, so it exists even if that run crashed in its first group
+        boolean resuming = Files.exists(checkpoint);
+        Set<String> done = readCheckpoint();
+        if (!done.isEmpty()) {
+            System.out.println("Resuming: " + done.size() + " images already processed");
+        }
+        if (resuming && dbManager != null) {
+            alreadySaved = readSavedImagePaths();
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        preparersLeft.set(prepareThreads);
+        for (int i = 0; i < prepareThreads; i++) {
+            threads.add(start("batch-prepare-" + i, this::runPreparer));
+        }
+        predictorsLeft.set(predictThreads);
+        for (int i = 0; i < predictThreads; i++) {
+            threads.add(start("batch-predict-" + i, this::runPredictor));
+        }
+
+        long started = System.nanoTime();
+        try (BufferedWriter out = openOutput(); BufferedWriter checkpointOut = Files.newBufferedWriter(checkpoint,
+                StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            Thread writer = start("batch-writer", () -> runWriter(out, checkpointOut, started));
+            try {
+                walk(done);
+            } finally {
+                // Drain what was already queued before the output is closed
+                toPrepare.put(END);
+                writer.join();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("Batch finished: %d analyzed, %d failed in %.1f s (%.1f images/s)%n",
+                succeeded.get(), failed.get(), seconds, succeeded.get() / Math.max(seconds, 0.001));
+        if (writerFailure != null) {
+            throw new IOException("Could not write results: " + writerFailure.getMessage(), writerFailure);
+        }
+        return failed.get() == 0;
+    }
+
+    private void walk(Set<String> done) throws IOException, InterruptedException {
+        try (Stream<Path> files = Files.walk(root)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (writerFailure != null) {
+                    return;
+                }
+                if (!Files.isRegularFile(file) || !ImageUtils.isImageFile(file)) {
+                    continue;
+                }
+                File image = file.toAbsolutePath().normalize().toFile();
+                if (!done.contains(image.getPath())) {
+                    toPrepare.put(new Item(image));
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private void runPreparer() {
+        try {
+            while (true) {
+                Item item = toPrepare.take();
+                if (item == END) {
+                    // Leave the marker for the other preparers; the last one closes the next stage
+                    toPrepare.put(END);
+                    if (preparersLeft.decrementAndGet() == 0) {
+                        toPredict.put(END);
+                    }
+                    return;
+                }
+                if (writerFailure != null) {
+                    continue;
+                }
+                try {
+                    item.prepared = predictor.prepare(item.file);
+                    toPredict.put(item);
+                } catch (IOException | RuntimeException e) {
+                    item.error = "Could not read image: " + e.getMessage();
+                    toWrite.put(item);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void runPredictor() {
+        int maxInstances = predictor.getMaxBatchInstances();
+        try {
+            boolean finished = false;
+            while (!finished) {
+                Item first = toPredict.take();
+                if (first == END) {
+                    break;
+                }
+                // Fill the request from whatever is ready within the wait, rather than sending singles
+                List<Item> batch = new ArrayList<>(maxInstances);
+                batch.add(first);
+                long deadline = System.nanoTime() + batchWaitNanos;
+                while (batch.size() < maxInstances) {
+                    Item next = toPredict.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next == END) {
+                        finished = true;
+                        break;
+                    }
+                    batch.add(next);
+                }
+                if (writerFailure == null) {
+                    predict(batch);
+                }
+                for (Item item : batch) {
+                    toWrite.put(item);
+                }
+            }
+            toPredict.put(END);
+            if (predictorsLeft.decrementAndGet() == 0) {
+                toWrite.put(END);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void predict(List<Item> batch) {
+        List<PreparedInstance> prepared = new ArrayList<>(batch.size());
+        for (Item item : batch) {
+            prepared.add(item.prepared);
+        }
+        try {
+            List<PredictionResult> results = predictor.predictPrepared(prepared);
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result = results.get(i);
+            }
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                batch.get(0).error = "Prediction failed: " + e.getMessage();
+                return;
+            }
+            // One bad image should not fail the others sent with it
+            for (Item item : batch) {
+                predict(Collections.singletonList(item));
+            }
+        }
+        for (Item item : batch) {
+            // The encoded image is no longer needed while the result waits for the writer
+            item.prepared = null;
+        }
+    }
+
+    private void runWriter(BufferedWriter out, BufferedWriter checkpointOut, long started) {
+        List<Item> group = new ArrayList<>(writeGroupSize);
+        int reported = 0;
+        boolean finished = false;
+        try {
+            try {
+                while (!finished) {
+                    group.add(toWrite.take());
+                    toWrite.drainTo(group, writeGroupSize - 1);
+                    if (group.get(group.size() - 1) == END) {
+                        group.remove(group.size() - 1);
+                        finished = true;
+                    }
+                    if (writerFailure == null) {
+                        try {
+                            writeGroup(group, out, checkpointOut);
+                        } catch (IOException | RuntimeException e) {
+                            // Keep draining so the other stages can finish; nothing more is checkpointed
+                            writerFailure = e;
+                        }
+                    }
+                    group.clear();
+
+                    int total = succeeded.get() + failed.get();
+                    if (total - reported >= 500 || (finished && total > reported)) {
+                        double seconds = (System.nanoTime() - started) / 1e9;
+                        System.out.printf("Processed %d images (%d failed), %.1f images/s%n",
+                                total, failed.get(), total / Math.max(seconds, 0.001));
+                        reported = total;
+                    }
+                }
+            } catch (RuntimeException e) {
+                // Cancel the run: the other stages stop working once they see the failure, and taking
+                // until the end marker keeps them from blocking on a full queue
+                if (writerFailure == null) {
+                    writerFailure = e;
+                }
+                while (!finished) {
+                    finished = toWrite.take() == END;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeGroup(List<Item> group, BufferedWriter out, BufferedWriter checkpointOut) throws IOException {
+        if (dbManager != null) {
+            List<Diagnosis> diagnoses = new ArrayList<>();
+            for (Item item : group) {
+                if (item.error == null && item.result.hasPrediction()
+                        && !alreadySaved.contains(item.file.getPath())) {
+                    diagnoses.add(toDiagnosis(item));
+                }
+            }
+            try {
+                dbManager.saveDiagnoses(diagnoses);
+            } catch (SQLException e) {
+                for (Item item : group) {
+                    if (item.error == null) {
+                        item.error = "Could not save diagnosis: " + e.getMessage();
+                    }
+                }
+            }
+        }
+
+        for (Item item : group) {
+            out.write(csv ? toCsv(item) : toJson(item));
+            out.newLine();
+        }
+        out.flush();
+        for (Item item : group) {
+            if (item.error == null) {
+                checkpointOut.write(item.file.getPath());
+                checkpointOut.newLine();
+                succeeded.incrementAndGet();
+            } else {
+                System.err.println(item.file + ": " + item.error);
+                failed.incrementAndGet();
+            }
+        }
+        checkpointOut.flush();
+    }
+
+    private Diagnosis toDiagnosis(Item item) {
+        Diagnosis diagnosis = new Diagnosis();
+        diagnosis.setPatientId(patientId);
+        diagnosis.setDiseasePrediction(item.result.getTopLabel());
+        diagnosis.setConfidenceScore(item.result.getTopConfidence());
+        diagnosis.setImagePath(item.file.getPath());
+        return diagnosis;
+    }
+
+    private Set<String> readCheckpoint() throws IOException {
+        Set<String> done = new HashSet<>();
+        if (Files.exists(checkpoint)) {
+            for (String line : Files.readAllLines(checkpoint, StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    done.add(line);
+                }
+            }
+        }
+        return done;
+    }
+
+    private Set<String> readSavedImagePaths() throws IOException {
+        Set<String> saved = new HashSet<>();
+        try {
+            for (Diagnosis diagnosis : dbManager.getDiagnosesByPatient(patientId)) {
+                if (diagnosis.getImagePath() != null) {
+                    saved.add(diagnosis.getImagePath());
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Could not read saved diagnoses: " + e.getMessage(), e);
+        }
+        return saved;
+    }
+
+    // Appends to earlier runs' results; the CSV header is only written to a new file
+    private BufferedWriter openOutput() throws IOException {
+        boolean empty = !Files.exists(output) || Files.size(output) == 0;
+        BufferedWriter out = Files.newBufferedWriter(output, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (csv && empty) {
+            out.write("path,label,confidence,cached,latency_ms,error");
+            out.newLine();
+        }
+        return out;
+    }
+
+    private static String toJson(Item item) {
+        StringBuilder json = new StringBuilder(256);
+        json.append("{\"path\":").append(jsonString(item.file.getPath()));
+        if (item.error != null) {
+            json.append(",\"error\":").append(jsonString(item.error));
+        } else {
+            PredictionResult result = item.result;
+            json.append(",\"label\":").append(jsonString(result.getTopLabel()))
+                    .append(",\"confidence\":").append((float) result.getTopConfidence())
+                    .append(",\"cached\":").append(result.isCached())
+                    .append(",\"latencyMs\":").append(result.getLatencyNanos() / 1_000_000)
+                    .append(",\"predictions\":[");
+            for (int i = 0; i < result.getLabelCount(); i++) {
+                json.append(i > 0 ? "," : "")
+                        .append("{\"label\":").append(jsonString(result.getLabel(i)))
+                        .append(",\"confidence\":").append(result.getConfidence(i)).append('}');
+            }
+            json.append(']');
+        }
+        return json.append('}').toString();
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': escaped.append("\\\""); break;
+                case '\\': escaped.append("\\\\"); break;
+                case '\n': escaped.append("\\n"); break;
+                case '\r': escaped.append("\\r"); break;
+                case '\t': escaped.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escaped.append(c);
+                    }
+            }
+        }
+        return escaped.append('"').toString();
+    }
+
+    private static String toCsv(Item item) {
+        if (item.error != null) {
+            return csvField(item.file.getPath()) + ",,,,," + csvField(item.error);
+        }
+        PredictionResult result = item.result;
+        return csvField(item.file.getPath()) + ',' + csvField(result.getTopLabel()) + ','
+                + (float) result.getTopConfidence() + ',' + result.isCached() + ','
+                + result.getLatencyNanos() / 1_000_000 + ',';
+    }
+
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static Thread start(String name, Runnable task) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    private static final class Item {
+        final File file;
+        PreparedInstance prepared;
+        PredictionResult result;
+        String error;
+
+        Item(File file) {
+            this.file = file;
+        }
+    }
+}
@@ -1,28 +1,43 @@
 package com.healthcare.skindetector.database;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
 
 import com.healthcare.skindetector.models.Diagnosis;
 import com.healthcare.skindetector.models.Patient;
+import com.healthcare.skindetector.utils.AppConfig;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 
 public class DatabaseManager {
 
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/skin_disease_db";
-    private static final String DB_USER = "root";     // Your username
-    private static final String DB_PASSWORD = "root"; // Your password
+    private static final String PATIENT_COLUMNS = "patient_id, name, age, phone, email, created_date";
+    private static final String DIAGNOSIS_COLUMNS =
+            "diagnosis_id, patient_id, disease_prediction, confidence_score, analysis_date, image_path";
 
     private static DatabaseManager instance;
-    private Connection connection;
+    private final HikariDataSource dataSource;
+    private final int batchSize = AppConfig.getInt("db.batchSize", 500);
+    private final PatientHistoryCache historyCache =
+            new PatientHistoryCache(this, AppConfig.getInt("db.historyCache.maxPatients", 500),
+                    TimeUnit.SECONDS.toMillis(AppConfig.getLong("db.historyCache.ttlSeconds", 30L)));
 
     private DatabaseManager() {
-        initializeConnection();
+        dataSource = createDataSource();
     }
 
     public static synchronized DatabaseManager getInstance() {
@@ -32,48 +47,70 @@ public class DatabaseManager {
         return instance;
     }
 
-    private void initializeConnection() {
+    private HikariDataSource createDataSource() {
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("mediscan-db");
+        config.setJdbcUrl(AppConfig.getString("db.url", "jdbc:mysql://localhost:3306/skin_disease_db"));
+        config.setUsername(AppConfig.getString("db.user", "root"));
+        config.setPassword(AppConfig.getString("db.password", "root"));
+
+        config.setMaximumPoolSize(AppConfig.getInt("db.pool.maxSize", 10));
+        config.setMinimumIdle(AppConfig.getInt("db.pool.minIdle", 2));
+        config.setConnectionTimeout(AppConfig.getLong("db.pool.connectionTimeoutMillis", 10_000L));
+        // Retire and ping connections well before MySQL's wait_timeout can drop them
+        config.setMaxLifetime(AppConfig.getLong("db.pool.maxLifetimeMillis", 1_800_000L));
+        config.setKeepaliveTime(AppConfig.getLong("db.pool.keepaliveMillis", 300_000L));
+        config.setValidationTimeout(AppConfig.getLong("db.pool.validationTimeoutMillis", 3_000L));
+
+        // Connector/J keeps a per-connection cache of parsed and server-side prepared statements
+        if (config.getJdbcUrl().startsWith("jdbc:mysql:")) {
+            config.addDataSourceProperty("cachePrepStmts", "true");
+            config.addDataSourceProperty("useServerPrepStmts", "true");
+            config.addDataSourceProperty("prepStmtCacheSize", AppConfig.getInt("db.statementCache.size", 250));
+            config.addDataSourceProperty("prepStmtCacheSqlLimit", 2048);
+            // Lets addBatch/executeBatch go out as multi-row INSERTs in a single round trip
+            config.addDataSourceProperty("rewriteBatchedStatements", "true");
+        }
+
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+            HikariDataSource pool = new HikariDataSource(config);
             System.out.println("Connected to database.");
+            return pool;
         } catch (Exception e) {
             throw new RuntimeException("Failed to connect to database: " + e.getMessage(), e);
         }
     }
 
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public PatientHistoryCache getHistoryCache() {
+        return historyCache;
+    }
+
     public void initializeDatabase() {
-        try (Statement stmt = connection.createStatement()) {
-            String createPatients = "CREATE TABLE IF NOT EXISTS patients (" +
-                    "patient_id INT AUTO_INCREMENT PRIMARY KEY, " +
-                    "name VARCHAR(100) NOT NULL, " +
-                    "age INT, " +
-                    "phone VARCHAR(15), " +
-                    "email VARCHAR(100), " +
-                    "created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
-                    ")";
-
-            stmt.execute(createPatients);
-
-            String createDiagnoses = "CREATE TABLE IF NOT EXISTS diagnoses (" +
-                    "diagnosis_id INT AUTO_INCREMENT PRIMARY KEY, " +
-                    "patient_id INT, " +
-                    "disease_prediction VARCHAR(200), " +
-                    "confidence_score DECIMAL(5,4), " +
-                    "analysis_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
-                    "image_path VARCHAR(500), " +
-                    "FOREIGN KEY (patient_id) REFERENCES patients(patient_id)" +
-                    ")";
-
-            stmt.execute(createDiagnoses);
-
-            System.out.println("Tables created or verified.");
+        try {
+            int version = new SchemaMigrator(dataSource).migrate();
+            System.out.println("Tables created or verified (schema version " + version + ").");
         } catch (SQLException e) {
             throw new RuntimeException("Error creating tables: " + e.getMessage(), e);
         }
     }
 
     public int savePatient(Patient patient) throws SQLException {
+        DatabaseOperationEvent event = DatabaseOperationEvent.start("savePatient", "INSERT");
+        try (Connection connection = event.connect(dataSource)) {
+            int patientId = insertPatient(connection, patient);
+            event.end(1);
+            return patientId;
+        } catch (SQLException | RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+    }
+
+    private int insertPatient(Connection connection, Patient patient) throws SQLException {
         String sql = "INSERT INTO patients (name, age, phone, email) VALUES (?, ?, ?, ?)";
         try (PreparedStatement stmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             stmt.setString(1, patient.getName());
@@ -94,52 +131,299 @@ public class DatabaseManager {
 
     public void saveDiagnosis(Diagnosis diagnosis) throws SQLException {
         String sql = "INSERT INTO diagnoses (patient_id, disease_prediction, confidence_score, image_path) VALUES (?, ?, ?, ?)";
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        DatabaseOperationEvent event = DatabaseOperationEvent.start("saveDiagnosis", "INSERT");
+        try (Connection connection = event.connect(dataSource);
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setInt(1, diagnosis.getPatientId());
             stmt.setString(2, diagnosis.getDiseasePrediction());
             stmt.setDouble(3, diagnosis.getConfidenceScore());
             stmt.setString(4, diagnosis.getImagePath());
             stmt.executeUpdate();
+        } catch (SQLException | RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+        event.end(1);
+        historyCache.invalidate(diagnosis.getPatientId());
+    }
+
+    // Saves a new patient and their diagnoses atomically; returns the generated patient ID
+    public int saveEncounter(Patient patient, List<Diagnosis> diagnoses) throws SQLException {
+        DatabaseOperationEvent event = DatabaseOperationEvent.start("saveEncounter", "INSERT");
+        try (Connection connection = event.connect(dataSource)) {
+            connection.setAutoCommit(false);
+            try {
+                int patientId = insertPatientWithDiagnoses(connection, patient, diagnoses);
+                insertDiagnoses(connection, diagnoses);
+                connection.commit();
+                historyCache.invalidate(patientId);
+                event.end(1 + diagnoses.size());
+                return patientId;
+            } catch (SQLException | RuntimeException e) {
+                clearGeneratedIds(patient, diagnoses);
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+    }
+
+    // Inserts the patient and stamps the new ID onto the diagnoses, which the caller still has to insert
+    int insertPatientWithDiagnoses(Connection connection, Patient patient, List<Diagnosis> diagnoses)
+            throws SQLException {
+        int patientId = insertPatient(connection, patient);
+        patient.setPatientId(patientId);
+        for (Diagnosis diagnosis : diagnoses) {
+            diagnosis.setPatientId(patientId);
+        }
+        return patientId;
+    }
+
+    // Undoes insertPatientWithDiagnoses after a rollback, so a caller that retries does not hold an ID
+    // that was never committed
+    void clearGeneratedIds(Patient patient, List<Diagnosis> diagnoses) {
+        patient.setPatientId(0);
+        for (Diagnosis diagnosis : diagnoses) {
+            diagnosis.setPatientId(0);
+        }
+    }
+
+    // Bulk insert for batch jobs; all rows are committed together or not at all
+    public void saveDiagnoses(List<Diagnosis> diagnoses) throws SQLException {
+        if (diagnoses.isEmpty()) {
+            return;
+        }
+        DatabaseOperationEvent event = DatabaseOperationEvent.start("saveDiagnoses", "INSERT");
+        try (Connection connection = event.connect(dataSource)) {
+            connection.setAutoCommit(false);
+            try {
+                insertDiagnoses(connection, diagnoses);
+                connection.commit();
+                invalidateHistories(diagnoses);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+        event.end(diagnoses.size());
+    }
+
+    // Call after the transaction that inserted these diagnoses has committed
+    void invalidateHistories(List<Diagnosis> diagnoses) {
+        for (Diagnosis diagnosis : diagnoses) {
+            historyCache.invalidate(diagnosis.getPatientId());
+        }
+    }
+
+    void insertDiagnoses(Connection connection, List<Diagnosis> diagnoses) throws SQLException {
+        String sql = "INSERT INTO diagnoses (patient_id, disease_prediction, confidence_score, image_path) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+            int pending = 0;
+            for (Diagnosis diagnosis : diagnoses) {
+                stmt.setInt(1, diagnosis.getPatientId());
+                stmt.setString(2, diagnosis.getDiseasePrediction());
+                stmt.setDouble(3, diagnosis.getConfidenceScore());
+                stmt.setString(4, diagnosis.getImagePath());
+                stmt.addBatch();
+                // Bound the size of each rewritten statement for very large imports
+                if (++pending == batchSize) {
+                    stmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                stmt.executeBatch();
+            }
         }
     }
 
     public List<Patient> getAllPatients() throws SQLException {
         List<Patient> patients = new ArrayList<>();
-        String sql = "SELECT * FROM patients ORDER BY created_date DESC";
+        String sql = "SELECT " + PATIENT_COLUMNS + " FROM patients ORDER BY created_date DESC, patient_id DESC";
 
-        try (Statement stmt = connection.createStatement();
+        DatabaseOperationEvent event = DatabaseOperationEvent.start("getAllPatients", "SELECT");
+        try (Connection connection = event.connect(dataSource);
+             Statement stmt = connection.createStatement();
              ResultSet rs = stmt.executeQuery(sql)) {
             while (rs.next()) {
-                Patient p = new Patient();
-                p.setPatientId(rs.getInt("patient_id"));
-                p.setName(rs.getString("name"));
-                p.setAge(rs.getInt("age"));
-                p.setPhone(rs.getString("phone"));
-                p.setEmail(rs.getString("email"));
-                patients.add(p);
+                patients.add(readPatient(rs));
             }
+        } catch (SQLException | RuntimeException e) {
+            event.fail(e);
+            throw e;
         }
+        event.end(patients.size());
+        return patients;
+    }
+
+    // Keyset pagination, newest first. Pass null/0 for the first page, then the created date and ID
+    // of the last patient on the previous page; cost per page does not grow with the table.
+    public List<Patient> getPatientsPage(LocalDateTime afterCreatedDate, int afterId, int limit) throws SQLException {
+        List<Patient> patients = new ArrayList<>(limit);
+        String sql = afterCreatedDate == null
+                ? "SELECT " + PATIENT_COLUMNS + " FROM patients " +
+                  "ORDER BY created_date DESC, patient_id DESC LIMIT ?"
+                : "SELECT " + PATIENT_COLUMNS + " FROM patients " +
+                  "WHERE created_date < ? OR (created_date = ? AND patient_id < ?) " +
+                  "ORDER BY created_date DESC, patient_id DESC LIMIT ?";
+
+        DatabaseOperationEvent event = DatabaseOperationEvent.start("getPatientsPage", "SELECT");
+        try (Connection connection = event.connect(dataSource);
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            int index = 1;
+            if (afterCreatedDate != null) {
+                Timestamp after = Timestamp.valueOf(afterCreatedDate);
+                stmt.setTimestamp(index++, after);
+                stmt.setTimestamp(index++, after);
+                stmt.setInt(index++, afterId);
+            }
+            stmt.setInt(index, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    patients.add(readPatient(rs));
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+        event.end(patients.size());
         return patients;
     }
 
     public List<Diagnosis> getDiagnosesByPatient(int patientId) throws SQLException {
         List<Diagnosis> diagnoses = new ArrayList<>();
-        String sql = "SELECT * FROM diagnoses WHERE patient_id = ? ORDER BY analysis_date DESC";
+        String sql = "SELECT " + DIAGNOSIS_COLUMNS + " FROM diagnoses WHERE patient_id = ? " +
+                "ORDER BY analysis_date DESC, diagnosis_id DESC";
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        DatabaseOperationEvent event = DatabaseOperationEvent.start("getDiagnosesByPatient", "SELECT");
+        try (Connection connection = event.connect(dataSource);
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
             stmt.setInt(1, patientId);
             try (ResultSet rs = stmt.executeQuery()) {
                 while (rs.next()) {
-                    Diagnosis d = new Diagnosis();
-                    d.setDiagnosisId(rs.getInt("diagnosis_id"));
-                    d.setPatientId(rs.getInt("patient_id"));
-                    d.setDiseasePrediction(rs.getString("disease_prediction"));
-                    d.setConfidenceScore(rs.getDouble("confidence_score"));
-                    d.setImagePath(rs.getString("image_path"));
-                    diagnoses.add(d);
+                    diagnoses.add(readDiagnosis(rs));
                 }
             }
+        } catch (SQLException | RuntimeException e) {
+            event.fail(e);
+            throw e;
         }
+        event.end(diagnoses.size());
         return diagnoses;
     }
+
+    // Histories for many patients in one round trip per chunk of IDs; every requested ID is present
+    // in the result, with an empty list when the patient has no diagnoses
+    public Map<Integer, List<Diagnosis>> getDiagnosesByPatients(Collection<Integer> patientIds) throws SQLException {
+        Map<Integer, List<Diagnosis>> histories = new LinkedHashMap<>();
+        for (Integer patientId : patientIds) {
+            histories.put(patientId, new ArrayList<>());
+        }
+        if (histories.isEmpty()) {
+            return histories;
+        }
+
+        List<Integer> ids = new ArrayList<>(histories.keySet());
+        DatabaseOperationEvent event = DatabaseOperationEvent.start("getDiagnosesByPatients", "SELECT");
+        int rows = 0;
+        try (Connection connection = event.connect(dataSource)) {
+            for (int from = 0; from < ids.size(); from += batchSize) {
+                List<Integer> chunk = ids.subList(from, Math.min(from + batchSize, ids.size()));
+                String placeholders = String.join(", ", Collections.nCopies(chunk.size(), "?"));
+                String sql = "SELECT " + DIAGNOSIS_COLUMNS + " FROM diagnoses WHERE patient_id IN (" + placeholders + ") " +
+                        "ORDER BY patient_id, analysis_date DESC, diagnosis_id DESC";
+                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) {
+                        stmt.setInt(i + 1, chunk.get(i));
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            Diagnosis d = readDiagnosis(rs);
+                            histories.get(d.getPatientId()).add(d);
+                            rows++;
+                        }
+                    }
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+        event.end(rows);
+        return histories;
+    }
+
+    // Same cursor contract as getPatientsPage, scoped to one patient
+    public List<Diagnosis> getDiagnosesPage(int patientId, LocalDateTime afterAnalysisDate, int afterId, int limit)
+            throws SQLException {
+        List<Diagnosis> diagnoses = new ArrayList<>(limit);
+        String sql = afterAnalysisDate == null
+                ? "SELECT " + DIAGNOSIS_COLUMNS + " FROM diagnoses WHERE patient_id = ? " +
+                  "ORDER BY analysis_date DESC, diagnosis_id DESC LIMIT ?"
+                : "SELECT " + DIAGNOSIS_COLUMNS + " FROM diagnoses WHERE patient_id = ? " +
+                  "AND (analysis_date < ? OR (analysis_date = ? AND diagnosis_id < ?)) " +
+                  "ORDER BY analysis_date DESC, diagnosis_id DESC LIMIT ?";
+
+        DatabaseOperationEvent event = DatabaseOperationEvent.start("getDiagnosesPage", "SELECT");
+        try (Connection connection = event.connect(dataSource);
+             PreparedStatement stmt = connection.prepareStatement(sql)) {
+            int index = 1;
+            stmt.setInt(index++, patientId);
+            if (afterAnalysisDate != null) {
+                Timestamp after = Timestamp.valueOf(afterAnalysisDate);
+                stmt.setTimestamp(index++, after);
+                stmt.setTimestamp(index++, after);
+                stmt.setInt(index++, afterId);
+            }
+            stmt.setInt(index, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    diagnoses.add(readDiagnosis(rs));
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            event.fail(e);
+            throw e;
+        }
+        event.end(diagnoses.size());
+        return diagnoses;
+    }
+
+    private static Patient readPatient(ResultSet rs) throws SQLException {
+        Patient p = new Patient();
+        p.setPatientId(rs.getInt("patient_id"));
+        p.setName(rs.getString("name"));
+        p.setAge(rs.getInt("age"));
+        p.setPhone(rs.getString("phone"));
+        p.setEmail(rs.getString("email"));
+        Timestamp created = rs.getTimestamp("created_date");
+        p.setCreatedDate(created != null ? created.toLocalDateTime() : null);
+        return p;
+    }
+
+    private static Diagnosis readDiagnosis(ResultSet rs) throws SQLException {
+        Diagnosis d = new Diagnosis();
+        d.setDiagnosisId(rs.getInt("diagnosis_id"));
+        d.setPatientId(rs.getInt("patient_id"));
+        d.setDiseasePrediction(rs.getString("disease_prediction"));
+        d.setConfidenceScore(rs.getDouble("confidence_score"));
+        d.setImagePath(rs.getString("image_path"));
+        Timestamp analyzed = rs.getTimestamp("analysis_date");
+        d.setAnalysisDate(analyzed != null ? analyzed.toLocalDateTime() : null);
+        return d;
+    }
+
+    public void close() {
+        dataSource.close();
+    }
 }
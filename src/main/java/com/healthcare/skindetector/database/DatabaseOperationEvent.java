@@ -0,0 +1,82 @@
+package com.healthcare.skindetector.database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import com.healthcare.skindetector.metrics.MetricsRegistry;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// Also times the operation into the "db" family of MetricsRegistry, whether or not JFR is recording
+@Name("com.healthcare.skindetector.DatabaseOperation")
+@Label("Database Operation")
+@Description("One DatabaseManager call or write-behind group commit, including the wait for a pooled connection")
+@Category({"MediScan", "Database"})
+@StackTrace(false)
+final class DatabaseOperationEvent extends Event {
+
+    @Label("Operation")
+    String operation;
+
+    @Label("SQL Operation")
+    String sqlOperation;
+
+    @Label("Rows")
+    @Description("Rows inserted or returned")
+    int rows;
+
+    @Label("Connection Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long connectionWaitNanos;
+
+    @Label("Error")
+    @Description("Exception of a failed operation; not set when it succeeded")
+    String error;
+
+    // Transient fields are not part of the recorded event
+    transient long startNanos;
+
+    static DatabaseOperationEvent start(String operation, String sqlOperation) {
+        DatabaseOperationEvent event = new DatabaseOperationEvent();
+        event.operation = operation;
+        event.sqlOperation = sqlOperation;
+        event.startNanos = System.nanoTime();
+        event.begin();
+        return event;
+    }
+
+    // Checks a connection out of the pool, recording how long that took
+    Connection connect(DataSource dataSource) throws SQLException {
+        if (!isEnabled()) {
+            return dataSource.getConnection();
+        }
+        long start = System.nanoTime();
+        Connection connection = dataSource.getConnection();
+        connectionWaitNanos = System.nanoTime() - start;
+        return connection;
+    }
+
+    void end(int rows) {
+        MetricsRegistry.getInstance().timer("db", operation).recordSince(startNanos, true);
+        if (shouldCommit()) {
+            this.rows = rows;
+            commit();
+        }
+    }
+
+    void fail(Exception e) {
+        MetricsRegistry.getInstance().timer("db", operation).recordSince(startNanos, false);
+        if (shouldCommit()) {
+            error = e.toString();
+            commit();
+        }
+    }
+}
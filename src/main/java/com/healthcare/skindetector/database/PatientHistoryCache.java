@@ -0,0 +1,131 @@
+package com.healthcare.skindetector.database;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.healthcare.skindetector.models.Diagnosis;
+
+// Read-through LRU cache of each patient's diagnoses, newest first.
+// DatabaseManager invalidates a patient after committing new diagnoses for them. Diagnoses saved by
+// another process (another workstation, the ingest or batch jobs, the API server) are not seen
+// until the entry expires, so a history is at most ttlMillis old.
+public class PatientHistoryCache {
+
+    private final DatabaseManager dbManager;
+    private final int maxPatients;
+    private final long ttlNanos;
+    private final Map<Integer, CachedHistory> histories;
+
+    // Bumped on every invalidation; a load that overlapped one may hold stale rows and is not stored
+    private final AtomicLong invalidations = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    PatientHistoryCache(DatabaseManager dbManager, int maxPatients, long ttlMillis) {
+        this.dbManager = dbManager;
+        this.maxPatients = maxPatients;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.histories = new LinkedHashMap<Integer, CachedHistory>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, CachedHistory> eldest) {
+                return size() > PatientHistoryCache.this.maxPatients;
+            }
+        };
+    }
+
+    public List<Diagnosis> getIfPresent(int patientId) {
+        synchronized (histories) {
+            return lookup(patientId, System.nanoTime());
+        }
+    }
+
+    public List<Diagnosis> get(int patientId) throws SQLException {
+        return getAll(Collections.singletonList(patientId)).get(patientId);
+    }
+
+    // Cached patients are served from memory; all others are fetched together in one bulk query
+    public Map<Integer, List<Diagnosis>> getAll(Collection<Integer> patientIds) throws SQLException {
+        Map<Integer, List<Diagnosis>> result = new LinkedHashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        synchronized (histories) {
+            long now = System.nanoTime();
+            for (Integer patientId : patientIds) {
+                List<Diagnosis> cached = lookup(patientId, now);
+                if (cached != null) {
+                    result.put(patientId, cached);
+                } else {
+                    missing.add(patientId);
+                }
+            }
+        }
+        hits.addAndGet(result.size());
+        misses.addAndGet(missing.size());
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        long generation = invalidations.get();
+        // Taken before the query, so the entry expires no later than ttlMillis after the rows were read
+        long loadedAt = System.nanoTime();
+        Map<Integer, List<Diagnosis>> loaded = dbManager.getDiagnosesByPatients(missing);
+        synchronized (histories) {
+            boolean fresh = generation == invalidations.get();
+            for (Map.Entry<Integer, List<Diagnosis>> entry : loaded.entrySet()) {
+                List<Diagnosis> history = Collections.unmodifiableList(entry.getValue());
+                if (fresh) {
+                    histories.put(entry.getKey(), new CachedHistory(history, loadedAt));
+                }
+                result.put(entry.getKey(), history);
+            }
+        }
+        return result;
+    }
+
+    // Must hold the histories lock; an expired entry is dropped and reported as absent
+    private List<Diagnosis> lookup(int patientId, long now) {
+        CachedHistory cached = histories.get(patientId);
+        if (cached == null) {
+            return null;
+        }
+        if (now - cached.loadedAt > ttlNanos) {
+            histories.remove(patientId);
+            return null;
+        }
+        return cached.diagnoses;
+    }
+
+    public void invalidate(int patientId) {
+        synchronized (histories) {
+            invalidations.incrementAndGet();
+            histories.remove(patientId);
+        }
+    }
+
+    public void clear() {
+        synchronized (histories) {
+            invalidations.incrementAndGet();
+            histories.clear();
+        }
+    }
+
+    public String getStats() {
+        return String.format("hits=%d misses=%d", hits.get(), misses.get());
+    }
+
+    private static final class CachedHistory {
+        final List<Diagnosis> diagnoses;
+        final long loadedAt;
+
+        CachedHistory(List<Diagnosis> diagnoses, long loadedAt) {
+            this.diagnoses = diagnoses;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.healthcare.skindetector.database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import javax.sql.DataSource;
+
+// Applies numbered schema changes once each and records progress in schema_version.
+// Append new migrations to the end of MIGRATIONS; never edit one that has shipped.
+// On MySQL a named lock serialises workstations that start at the same time, so only one of them
+// applies each migration.
+class SchemaMigrator {
+
+    private static final String LOCK_NAME = "schema_migration";
+    private static final int LOCK_TIMEOUT_SECONDS = 60;
+
+    private static final List<Migration> MIGRATIONS = Arrays.asList(
+            new Migration(1, "base tables",
+                    sql("CREATE TABLE IF NOT EXISTS patients (" +
+                            "patient_id INT AUTO_INCREMENT PRIMARY KEY, " +
+                            "name VARCHAR(100) NOT NULL, " +
+                            "age INT, " +
+                            "phone VARCHAR(15), " +
+                            "email VARCHAR(100), " +
+                            "created_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                            ")"),
+                    sql("CREATE TABLE IF NOT EXISTS diagnoses (" +
+                            "diagnosis_id INT AUTO_INCREMENT PRIMARY KEY, " +
+                            "patient_id INT, " +
+                            "disease_prediction VARCHAR(200), " +
+                            "confidence_score DECIMAL(5,4), " +
+                            "analysis_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP, " +
+                            "image_path VARCHAR(500), " +
+                            "FOREIGN KEY (patient_id) REFERENCES patients(patient_id)" +
+                            ")")),
+            // Composite indexes matching the history queries' WHERE + ORDER BY, so each page is an index range scan
+            new Migration(2, "history indexes",
+                    index("idx_patients_created", "patients", "created_date, patient_id"),
+                    index("idx_diagnoses_patient_date", "diagnoses", "patient_id, analysis_date, diagnosis_id")));
+
+    private final DataSource dataSource;
+
+    SchemaMigrator(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    int migrate() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                        "version INT PRIMARY KEY, " +
+                        "description VARCHAR(200), " +
+                        "applied_date TIMESTAMP DEFAULT CURRENT_TIMESTAMP" +
+                        ")");
+            }
+
+            boolean locked = acquireLock(connection);
+            try {
+                // Read under the lock: another instance may have just applied what this one would
+                int current = currentVersion(connection);
+                for (Migration migration : MIGRATIONS) {
+                    if (migration.version <= current) {
+                        continue;
+                    }
+                    // MySQL commits DDL implicitly, so each migration is recorded as soon as it succeeds
+                    for (Step step : migration.steps) {
+                        step.apply(connection);
+                    }
+                    try (PreparedStatement stmt = connection.prepareStatement(
+                            "INSERT INTO schema_version (version, description) VALUES (?, ?)")) {
+                        stmt.setInt(1, migration.version);
+                        stmt.setString(2, migration.description);
+                        stmt.executeUpdate();
+                    }
+                    System.out.println("Applied schema migration " + migration.version + ": " + migration.description);
+                    current = migration.version;
+                }
+                return current;
+            } finally {
+                if (locked) {
+                    releaseLock(connection);
+                }
+            }
+        }
+    }
+
+    // GET_LOCK is MySQL-specific; other databases (the embedded H2 used by benchmarks) run unlocked
+    private boolean acquireLock(Connection connection) throws SQLException {
+        String product = connection.getMetaData().getDatabaseProductName();
+        if (!"MySQL".equalsIgnoreCase(product) && !"MariaDB".equalsIgnoreCase(product)) {
+            return false;
+        }
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT GET_LOCK(?, ?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.setInt(2, LOCK_TIMEOUT_SECONDS);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for another instance to finish migrating the schema");
+                }
+            }
+        }
+        return true;
+    }
+
+    private void releaseLock(Connection connection) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.executeQuery().close();
+        }
+    }
+
+    private int currentVersion(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT MAX(version) FROM schema_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    private static Step sql(String statement) {
+        return connection -> {
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute(statement);
+            }
+        };
+    }
+
+    // MySQL has no CREATE INDEX IF NOT EXISTS; an index that is already there, e.g. from a run that
+    // failed before recording its version, is left alone
+    private static Step index(String name, String table, String columns) {
+        Step create = sql("CREATE INDEX " + name + " ON " + table + " (" + columns + ")");
+        return connection -> {
+            if (!indexExists(connection, table, name)) {
+                create.apply(connection);
+            }
+        };
+    }
+
+    // Driver metadata rather than information_schema.statistics, which H2 does not have
+    private static boolean indexExists(Connection connection, String table, String name) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String tableName = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+        try (ResultSet rs = metaData.getIndexInfo(connection.getCatalog(), null, tableName, false, true)) {
+            while (rs.next()) {
+                if (name.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final Step[] steps;
+
+        Migration(int version, String description, Step... steps) {
+            this.version = version;
+            this.description = description;
+            this.steps = steps;
+        }
+    }
+}
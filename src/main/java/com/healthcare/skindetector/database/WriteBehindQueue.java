@@ -0,0 +1,224 @@
+package com.healthcare.skindetector.database;
+
+import java.sql.Connection;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.healthcare.skindetector.models.Diagnosis;
+import com.healthcare.skindetector.models.Patient;
+import com.healthcare.skindetector.utils.AppConfig;
+
+// Accepts encounters from any thread and writes them on a single background thread.
+// Whatever has queued up while the previous transaction ran is committed together.
+public class WriteBehindQueue {
+
+    // Wakes the writer from take() so it notices close(); never written
+    private static final PendingEncounter STOP = new PendingEncounter(null, null);
+
+    private static WriteBehindQueue instance;
+
+    private final DatabaseManager dbManager;
+    private final BlockingQueue<PendingEncounter> queue;
+    private final int maxGroupSize;
+    private final long offerTimeoutMillis;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public WriteBehindQueue(DatabaseManager dbManager, int capacity, int maxGroupSize, long offerTimeoutMillis) {
+        this.dbManager = dbManager;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxGroupSize = maxGroupSize;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.writer = new Thread(this::runWriter, "db-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public static synchronized WriteBehindQueue getInstance() {
+        if (instance == null) {
+            instance = new WriteBehindQueue(DatabaseManager.getInstance(),
+                    AppConfig.getInt("db.writeBehind.capacity", 1000),
+                    AppConfig.getInt("db.writeBehind.maxGroupSize", 100),
+                    AppConfig.getLong("db.writeBehind.offerTimeoutMillis", 2000L));
+        }
+        return instance;
+    }
+
+    // Completes with the new patient ID once the encounter is committed. When the queue is full the
+    // caller waits up to the offer timeout, then the future fails with RejectedExecutionException.
+    public CompletableFuture<Integer> submit(Patient patient, List<Diagnosis> diagnoses) {
+        return enqueue(new PendingEncounter(patient, diagnoses), offerTimeoutMillis);
+    }
+
+    // Like submit, but fails at once instead of waiting when the queue is full, for callers such
+    // as the Event Dispatch Thread that must not block
+    public CompletableFuture<Integer> trySubmit(Patient patient, List<Diagnosis> diagnoses) {
+        return enqueue(new PendingEncounter(patient, diagnoses), 0L);
+    }
+
+    private CompletableFuture<Integer> enqueue(PendingEncounter encounter, long timeoutMillis) {
+        if (closed) {
+            encounter.result.completeExceptionally(new RejectedExecutionException("Write-behind queue is closed"));
+            return encounter.result;
+        }
+        try {
+            if (!queue.offer(encounter, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                encounter.result.completeExceptionally(
+                        new RejectedExecutionException("Database is falling behind; " + queue.size() + " writes pending"));
+            } else if (closed && queue.remove(encounter)) {
+                // close() started while this was offered, and the writer may already have drained
+                encounter.result.completeExceptionally(new RejectedExecutionException("Write-behind queue is closed"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            encounter.result.completeExceptionally(e);
+        }
+        return encounter.result;
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    // Stops accepting writes, commits everything already queued, then stops the writer thread.
+    // The writer is only interrupted if it has not finished within 30 s, as an interrupt while it
+    // waits for a connection fails the group it is writing.
+    public void close() {
+        closed = true;
+        // A full queue means the writer is busy, not blocked in take(), and sees the flag anyway
+        queue.offer(STOP);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+            if (writer.isAlive()) {
+                System.err.println("Write-behind writer still busy after 30 s; interrupting it");
+                writer.interrupt();
+                writer.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        PendingEncounter leftover;
+        while ((leftover = queue.poll()) != null) {
+            if (leftover == STOP) {
+                continue;
+            }
+            System.err.println("Write-behind queue closed before saving patient " + leftover.patient.getName());
+            leftover.result.completeExceptionally(new RejectedExecutionException("Write-behind queue is closed"));
+        }
+    }
+
+    private void runWriter() {
+        List<PendingEncounter> group = new ArrayList<>(maxGroupSize);
+        while (true) {
+            PendingEncounter first;
+            try {
+                // Once closed, flush what is left without waiting for new arrivals
+                first = closed ? queue.poll() : queue.take();
+            } catch (InterruptedException e) {
+                // Only close() interrupts, as a last resort; loop around and switch to draining
+                continue;
+            }
+            if (first == STOP) {
+                continue;
+            }
+            if (first == null) {
+                return;
+            }
+            group.add(first);
+            queue.drainTo(group, maxGroupSize - group.size());
+            group.removeIf(encounter -> encounter == STOP);
+            writeGroup(group);
+            group.clear();
+        }
+    }
+
+    private void writeGroup(List<PendingEncounter> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        int[] patientIds = new int[group.size()];
+        DatabaseOperationEvent event = DatabaseOperationEvent.start("writeGroup", "INSERT");
+        int rows = 0;
+        try (Connection connection = event.connect(dbManager.getDataSource())) {
+            connection.setAutoCommit(false);
+            try {
+                List<Diagnosis> allDiagnoses = new ArrayList<>();
+                for (int i = 0; i < group.size(); i++) {
+                    PendingEncounter encounter = group.get(i);
+                    patientIds[i] = dbManager.insertPatientWithDiagnoses(connection, encounter.patient,
+                            encounter.diagnoses);
+                    allDiagnoses.addAll(encounter.diagnoses);
+                }
+                dbManager.insertDiagnoses(connection, allDiagnoses);
+                connection.commit();
+                dbManager.invalidateHistories(allDiagnoses);
+                rows = group.size() + allDiagnoses.size();
+            } catch (SQLException | RuntimeException e) {
+                for (PendingEncounter encounter : group) {
+                    dbManager.clearGeneratedIds(encounter.patient, encounter.diagnoses);
+                }
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException | RuntimeException e) {
+            event.fail(e);
+            // One bad record must not fail its neighbours: retry each encounter on its own. Anything
+            // else, such as an unreachable database, would fail every retry too, each after the full
+            // connection timeout, so the whole group fails at once.
+            if (group.size() > 1 && isRecordError(e)) {
+                writeIndividually(group);
+            } else {
+                for (PendingEncounter encounter : group) {
+                    encounter.result.completeExceptionally(e);
+                }
+            }
+            return;
+        }
+        event.end(rows);
+
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).result.complete(patientIds[i]);
+        }
+    }
+
+    // Constraint violations and invalid data (SQLSTATE classes 23 and 22), including batch failures
+    // that carry those states
+    private static boolean isRecordError(Exception e) {
+        if (e instanceof SQLIntegrityConstraintViolationException || e instanceof SQLDataException) {
+            return true;
+        }
+        String state = e instanceof SQLException ? ((SQLException) e).getSQLState() : null;
+        return state != null && (state.startsWith("22") || state.startsWith("23"));
+    }
+
+    private void writeIndividually(List<PendingEncounter> group) {
+        for (PendingEncounter encounter : group) {
+            try {
+                encounter.result.complete(dbManager.saveEncounter(encounter.patient, encounter.diagnoses));
+            } catch (SQLException | RuntimeException e) {
+                encounter.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static final class PendingEncounter {
+        final Patient patient;
+        final List<Diagnosis> diagnoses;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+
+        PendingEncounter(Patient patient, List<Diagnosis> diagnoses) {
+            this.patient = patient;
+            this.diagnoses = diagnoses;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.healthcare.skindetector.gui;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Frame;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTable;
+import javax.swing.Timer;
+import javax.swing.border.EmptyBorder;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.DefaultTableModel;
+
+import com.healthcare.skindetector.metrics.LatencyHistogram;
+import com.healthcare.skindetector.metrics.MetricsRegistry;
+import com.healthcare.skindetector.metrics.OperationTimer;
+import com.healthcare.skindetector.utils.AppConfig;
+
+// Live throughput, error rate and latency percentiles of prediction and database operations over
+// the last diagnostics.windowSeconds, refreshed while the dialog is open
+public class DiagnosticsGUI extends JDialog {
+
+    private static final String[] COLUMNS = {"Operation", "Calls/s", "Errors/s", "p50 ms", "p99 ms", "Total calls"};
+
+    private final MetricsRegistry registry = MetricsRegistry.getInstance();
+    private final long windowNanos = AppConfig.getLong("diagnostics.windowSeconds", 60L) * 1_000_000_000L;
+    private final Map<OperationTimer, Deque<Sample>> history = new HashMap<>();
+    private final DefaultTableModel model = new DefaultTableModel(COLUMNS, 0) {
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+    };
+    private final List<Boolean> failingRows = new ArrayList<>();
+    private final JLabel windowLabel = new JLabel();
+    private final Timer refreshTimer;
+
+    public DiagnosticsGUI(Frame parent) {
+        super(parent, "Diagnostics", false);
+        initializeGUI();
+        refresh();
+        refreshTimer = new Timer(AppConfig.getInt("diagnostics.refreshMillis", 1000), e -> refresh());
+        refreshTimer.start();
+    }
+
+    private void initializeGUI() {
+        setLayout(new BorderLayout());
+
+        JTable table = new JTable(model);
+        // Operations that are failing stand out in red
+        table.setDefaultRenderer(Object.class, new DefaultTableCellRenderer() {
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                    boolean hasFocus, int row, int column) {
+                Component cell = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                boolean failing = row < failingRows.size() && failingRows.get(row);
+                cell.setForeground(failing ? Color.RED : isSelected ? table.getSelectionForeground() : table.getForeground());
+                return cell;
+            }
+        });
+        add(new JScrollPane(table), BorderLayout.CENTER);
+
+        windowLabel.setBorder(new EmptyBorder(5, 8, 5, 8));
+        add(windowLabel, BorderLayout.NORTH);
+
+        JButton closeButton = new JButton("Close");
+        closeButton.addActionListener(e -> dispose());
+        JPanel buttonPanel = new JPanel();
+        buttonPanel.add(closeButton);
+        add(buttonPanel, BorderLayout.SOUTH);
+
+        setSize(700, 400);
+        setLocationRelativeTo(getParent());
+    }
+
+    // Rates and percentiles come from the difference between the newest snapshot and the oldest
+    // one still inside the window, so they describe recent behaviour rather than the whole session
+    private void refresh() {
+        long now = System.nanoTime();
+        List<OperationTimer> timers = registry.getTimers();
+        model.setRowCount(0);
+        failingRows.clear();
+        long shownWindowNanos = 0;
+        for (OperationTimer timer : timers) {
+            Sample current = new Sample(now, timer.getLatency(), timer.getErrors());
+            Deque<Sample> samples = history.computeIfAbsent(timer, t -> new ArrayDeque<>());
+            samples.addLast(current);
+            while (samples.size() > 2 && now - samples.peekFirst().nanos > windowNanos) {
+                samples.removeFirst();
+            }
+
+            Sample oldest = samples.size() > 1 ? samples.peekFirst() : null;
+            LatencyHistogram.Snapshot window = oldest != null ? current.latency.minus(oldest.latency) : current.latency;
+            long errors = oldest != null ? current.errors - oldest.errors : current.errors;
+            double seconds = oldest != null ? (now - oldest.nanos) / 1e9 : 0;
+            shownWindowNanos = Math.max(shownWindowNanos, oldest != null ? now - oldest.nanos : 0);
+
+            failingRows.add(errors > 0);
+            model.addRow(new Object[] {
+                timer.getFamily() + " " + timer.getOperation(),
+                seconds > 0 ? format(window.getCount() / seconds) : "-",
+                seconds > 0 ? format(errors / seconds) : "-",
+                window.getCount() > 0 ? format(window.percentileMicros(50) / 1000.0) : "-",
+                window.getCount() > 0 ? format(window.percentileMicros(99) / 1000.0) : "-",
+                current.latency.getCount()
+            });
+        }
+        windowLabel.setText(timers.isEmpty()
+                ? "No operations recorded yet."
+                : String.format("Last %d s; percentiles are accurate to within 12.5%%.", shownWindowNanos / 1_000_000_000L));
+    }
+
+    private static String format(double value) {
+        return String.format("%.1f", value);
+    }
+
+    @Override
+    public void dispose() {
+        refreshTimer.stop();
+        super.dispose();
+    }
+
+    private static final class Sample {
+        final long nanos;
+        final LatencyHistogram.Snapshot latency;
+        final long errors;
+
+        Sample(long nanos, LatencyHistogram.Snapshot latency, long errors) {
+            this.nanos = nanos;
+            this.latency = latency;
+            this.errors = errors;
+        }
+    }
+}
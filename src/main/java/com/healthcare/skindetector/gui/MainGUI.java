@@ -13,7 +13,13 @@ import java.awt.Insets;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.time.LocalDateTime;
-import java.util.concurrent.ExecutionException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
@@ -27,16 +33,17 @@ import javax.swing.JScrollPane;
 import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.SwingConstants;
-import javax.swing.SwingWorker;
+import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.border.EmptyBorder;
 import javax.swing.filechooser.FileNameExtensionFilter;
 
-import com.healthcare.skindetector.database.DatabaseManager;
+import com.healthcare.skindetector.database.WriteBehindQueue;
 import com.healthcare.skindetector.models.Diagnosis;
 import com.healthcare.skindetector.models.Patient;
+import com.healthcare.skindetector.models.PredictionResult;
 import com.healthcare.skindetector.utils.ImageUtils;
-import com.healthcare.skindetector.vertexai.VertexAIPredictor;
+import com.healthcare.skindetector.vertexai.Predictor;
 
 public class MainGUI extends JFrame {
     
@@ -52,14 +59,16 @@ public class MainGUI extends JFrame {
     private JTextField nameField, ageField, phoneField, emailField;
     private JLabel imageLabel;
     private JTextArea resultsArea;
-    private JButton uploadButton, analyzeButton, saveButton, clearButton, historyButton;
+    private JButton uploadButton, analyzeButton, saveButton, clearButton, historyButton, diagnosticsButton;
+    private DiagnosticsGUI diagnostics;
 
     private File selectedImageFile;
     private BufferedImage selectedImage;
-    private String predictionResult;
+    private PredictionResult predictionResult;
+    private CompletableFuture<PredictionResult> currentAnalysis;
 
-    private final DatabaseManager dbManager = DatabaseManager.getInstance();
-    private final VertexAIPredictor predictor = new VertexAIPredictor();
+    private final WriteBehindQueue writeQueue = WriteBehindQueue.getInstance();
+    private final Predictor predictor = Predictor.fromConfig();
 
     public MainGUI() {
         setSystemLookAndFeel();
@@ -363,17 +372,30 @@ public class MainGUI extends JFrame {
         historyButton = createStyledButton("📂 View Patient History", HOSPITAL_GRAY);
         historyButton.addActionListener(e -> new PatientHistoryGUI(this).setVisible(true));
 
+        diagnosticsButton = createStyledButton("📈 Diagnostics", HOSPITAL_GRAY);
+        diagnosticsButton.addActionListener(e -> showDiagnostics());
+
         clearButton = createStyledButton("🗑️ Clear Form", HOSPITAL_RED);
         clearButton.addActionListener(e -> clearAll());
 
         panel.add(analyzeButton);
         panel.add(saveButton);
         panel.add(historyButton);
+        panel.add(diagnosticsButton);
         panel.add(clearButton);
 
         return panel;
     }
 
+    // Non-modal and kept to one window, so it can stay open next to the form while staff work
+    private void showDiagnostics() {
+        if (diagnostics == null || !diagnostics.isDisplayable()) {
+            diagnostics = new DiagnosticsGUI(this);
+        }
+        diagnostics.setVisible(true);
+        diagnostics.toFront();
+    }
+
     private JButton createStyledButton(String text, Color bgColor) {
         JButton button = new JButton(text);
         button.setFont(new Font("Segoe UI", Font.BOLD, 13));
@@ -403,6 +425,9 @@ public class MainGUI extends JFrame {
         fileChooser.setFileFilter(new FileNameExtensionFilter("Image Files", "jpg", "jpeg", "png", "gif", "bmp"));
 
         if (fileChooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
+            cancelAnalysis();
+            // The previous result belongs to the previous image and must not be saved against this one
+            predictionResult = null;
             selectedImageFile = fileChooser.getSelectedFile();
             try {
                 selectedImage = ImageUtils.loadAndResizeImage(selectedImageFile, 500, 400);
@@ -428,65 +453,33 @@ public class MainGUI extends JFrame {
         resultsArea.setForeground(HOSPITAL_BLUE);
         analyzeButton.setEnabled(false);
 
-        SwingWorker<String, Void> worker = new SwingWorker<>() {
-            @Override
-            protected String doInBackground() throws Exception {
-                return predictor.predictSkinDisease(selectedImageFile);
+        CompletableFuture<PredictionResult> analysis = predictor.predictSkinDiseaseAsync(selectedImageFile);
+        currentAnalysis = analysis;
+        analysis.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            // Cleared or superseded while the request was in flight
+            if (analysis != currentAnalysis || analysis.isCancelled()) {
+                return;
             }
-
-            @Override
-            protected void done() {
-                try {
-                    predictionResult = get();
-                    displayResults(predictionResult);
-                    saveButton.setEnabled(true);
-                } catch (InterruptedException | ExecutionException e) {
-                    resultsArea.setText("❌ Analysis Failed\n\n" + e.getMessage());
-                    resultsArea.setForeground(HOSPITAL_RED);
-                    JOptionPane.showMessageDialog(MainGUI.this, "Analysis failed: " + e.getMessage(), "Analysis Error", JOptionPane.ERROR_MESSAGE);
-                }
-                analyzeButton.setEnabled(true);
+            currentAnalysis = null;
+            if (error == null) {
+                predictionResult = result;
+                displayResults(predictionResult);
+                saveButton.setEnabled(true);
+            } else {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                resultsArea.setText("❌ Analysis Failed\n\n" + cause.getMessage());
+                resultsArea.setForeground(HOSPITAL_RED);
+                JOptionPane.showMessageDialog(MainGUI.this, "Analysis failed: " + cause.getMessage(), "Analysis Error", JOptionPane.ERROR_MESSAGE);
             }
-        };
-        worker.execute();
+            analyzeButton.setEnabled(true);
+        }));
     }
 
-    private void displayResults(String result) {
-        resultsArea.setText(result);
+    private void displayResults(PredictionResult result) {
+        resultsArea.setText(result.getReport());
         resultsArea.setForeground(Color.BLACK);
     }
 
-    private String extractPrediction(String result) {
-        // Extract disease name from formatted result
-        if (result == null) return "Unknown";
-        if (result.contains("Detected Condition:")) {
-            int start = result.indexOf("Detected Condition:") + 20;
-            int end = result.indexOf("\n", start);
-            if (end > start) {
-                return result.substring(start, end).trim();
-            }
-        }
-        return "Unknown";
-    }
-
-    private double extractConfidence(String result) {
-        // Extract confidence percentage
-        if (result == null) return 0.0;
-        if (result.contains("Confidence Level:")) {
-            try {
-                int start = result.indexOf("Confidence Level:") + 18;
-                int end = result.indexOf("%", start);
-                if (end > start) {
-                    String confStr = result.substring(start, end).trim();
-                    return Double.parseDouble(confStr);
-                }
-            } catch (Exception e) {
-                // Fallback
-            }
-        }
-        return 85.0;
-    }
-
     private void saveRecord() {
         if (nameField.getText().trim().isEmpty()) {
             JOptionPane.showMessageDialog(this, "Please enter patient name.", "Missing Information", JOptionPane.WARNING_MESSAGE);
@@ -499,24 +492,63 @@ public class MainGUI extends JFrame {
             patient.setPhone(phoneField.getText().trim());
             patient.setEmail(emailField.getText().trim());
 
-            int patientId = dbManager.savePatient(patient);
-
             Diagnosis diagnosis = new Diagnosis();
-            diagnosis.setPatientId(patientId);
-            diagnosis.setDiseasePrediction(extractPrediction(predictionResult));
-            diagnosis.setConfidenceScore(extractConfidence(predictionResult) / 100.0);
+            diagnosis.setDiseasePrediction(predictionResult.getTopLabel());
+            diagnosis.setConfidenceScore(predictionResult.getTopConfidence());
             diagnosis.setImagePath(selectedImageFile != null ? selectedImageFile.getAbsolutePath() : null);
 
-            dbManager.saveDiagnosis(diagnosis);
-
-            JOptionPane.showMessageDialog(this, "✅ Patient record saved successfully!\n\nPatient ID: " + patientId, "Success", JOptionPane.INFORMATION_MESSAGE);
-            clearAll();
+            // The write happens on the database thread; the form stays usable until it is confirmed.
+            // trySubmit never blocks this thread: a full queue fails the save at once instead.
+            FormState saved = new FormState();
+            saveButton.setEnabled(false);
+            writeQueue.trySubmit(patient, Collections.singletonList(diagnosis))
+                    .whenComplete((patientId, error) -> SwingUtilities.invokeLater(() -> {
+                        if (error == null) {
+                            JOptionPane.showMessageDialog(this, "✅ Patient record saved successfully!\n\nPatient ID: " + patientId, "Success", JOptionPane.INFORMATION_MESSAGE);
+                            // Keep whatever was typed, uploaded or analysed after clicking Save
+                            if (saved.sameAs(new FormState()) && currentAnalysis == null) {
+                                clearAll();
+                            } else {
+                                saveButton.setEnabled(predictionResult != null && predictionResult != saved.result);
+                            }
+                        } else {
+                            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                            String message = cause instanceof RejectedExecutionException
+                                    ? "The database is busy; please try saving again in a moment."
+                                    : "Error saving record: " + cause.getMessage();
+                            JOptionPane.showMessageDialog(this, message, "Save Error", JOptionPane.ERROR_MESSAGE);
+                            // Only offer Save again if the form still shows the result that failed to save
+                            if (predictionResult != null && predictionResult == saved.result) {
+                                saveButton.setEnabled(true);
+                            }
+                        }
+                    }));
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this, "Error saving record: " + e.getMessage(), "Save Error", JOptionPane.ERROR_MESSAGE);
         }
     }
 
+    // What the form showed when Save was clicked
+    private final class FormState {
+        final List<String> fields = Arrays.asList(nameField.getText(), ageField.getText(), phoneField.getText(),
+                emailField.getText());
+        final File image = selectedImageFile;
+        final PredictionResult result = predictionResult;
+
+        boolean sameAs(FormState other) {
+            return fields.equals(other.fields) && Objects.equals(image, other.image) && result == other.result;
+        }
+    }
+
+    private void cancelAnalysis() {
+        if (currentAnalysis != null) {
+            currentAnalysis.cancel(true);
+            currentAnalysis = null;
+        }
+    }
+
     private void clearAll() {
+        cancelAnalysis();
         nameField.setText("");
         ageField.setText("");
         phoneField.setText("");
@@ -2,7 +2,10 @@ package com.healthcare.skindetector.gui;
 
 import java.awt.BorderLayout;
 import java.awt.Frame;
+import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JButton;
 import javax.swing.JDialog;
@@ -11,28 +14,38 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JSplitPane;
 import javax.swing.JTable;
+import javax.swing.SwingWorker;
 import javax.swing.table.DefaultTableModel;
 
 import com.healthcare.skindetector.database.DatabaseManager;
 import com.healthcare.skindetector.models.Diagnosis;
-import com.healthcare.skindetector.models.Patient;
+import com.healthcare.skindetector.utils.AppConfig;
+import com.healthcare.skindetector.utils.ThumbnailCache;
 
 public class PatientHistoryGUI extends JDialog {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
     private JTable patientTable;
     private JTable diagnosisTable;
+    private PatientTableModel patientModel;
+    private SwingWorker<List<Diagnosis>, Void> diagnosisLoader;
     private final DatabaseManager dbManager = DatabaseManager.getInstance();
 
     public PatientHistoryGUI(Frame parent) {
         super(parent, "Patient History", true);
         initializeGUI();
-        loadPatientData();
+        // Pages arrive in the background; the dialog opens immediately
+        patientModel.start();
     }
 
     private void initializeGUI() {
         setLayout(new BorderLayout());
 
-        String[] patientColumns = {"ID", "Name", "Age", "Phone", "Email"};
-        DefaultTableModel patientModel = new DefaultTableModel(patientColumns, 0);
+        patientModel = new PatientTableModel(dbManager,
+                AppConfig.getInt("history.pageSize", 100),
+                AppConfig.getInt("history.maxCachedPages", 20),
+                TimeUnit.SECONDS.toMillis(AppConfig.getLong("history.retrySeconds", 10L)),
+                e -> JOptionPane.showMessageDialog(this, "Error loading patients: " + e.getMessage()));
         patientTable = new JTable(patientModel);
         patientTable.getSelectionModel().addListSelectionListener(e -> {
             if (!e.getValueIsAdjusting()) {
@@ -43,6 +56,10 @@ public class PatientHistoryGUI extends JDialog {
         String[] diagnosisColumns = {"Date", "Prediction", "Confidence", "Image"};
         DefaultTableModel diagnosisModel = new DefaultTableModel(diagnosisColumns, 0);
         diagnosisTable = new JTable(diagnosisModel);
+        ThumbnailCache thumbnails = ThumbnailCache.getInstance();
+        diagnosisTable.getColumnModel().getColumn(3).setCellRenderer(new ThumbnailRenderer(thumbnails));
+        diagnosisTable.getColumnModel().getColumn(3).setPreferredWidth(thumbnails.getSize() + 8);
+        diagnosisTable.setRowHeight(thumbnails.getSize() + 4);
 
         JSplitPane splitPane = new JSplitPane(JSplitPane.VERTICAL_SPLIT,
             new JScrollPane(patientTable),
@@ -60,43 +77,72 @@ public class PatientHistoryGUI extends JDialog {
         setLocationRelativeTo(getParent());
     }
 
-    private void loadPatientData() {
-        try {
-            List<Patient> patients = dbManager.getAllPatients();
-            DefaultTableModel model = (DefaultTableModel) patientTable.getModel();
-            model.setRowCount(0);
-            for (Patient p : patients) {
-                model.addRow(new Object[]{
-                    p.getPatientId(),
-                    p.getName(),
-                    p.getAge(),
-                    p.getPhone(),
-                    p.getEmail()
-                });
-            }
-        } catch (Exception e) {
-            JOptionPane.showMessageDialog(this, "Error loading patients: " + e.getMessage());
+    private void loadDiagnosisData() {
+        // Only the latest selection matters; drop any load still running for an earlier one
+        if (diagnosisLoader != null) {
+            diagnosisLoader.cancel(true);
+            diagnosisLoader = null;
         }
-    }
+        DefaultTableModel model = (DefaultTableModel) diagnosisTable.getModel();
+        model.setRowCount(0);
 
-    private void loadDiagnosisData() {
         int row = patientTable.getSelectedRow();
-        if (row >= 0) {
-            int patientId = (Integer) patientTable.getValueAt(row, 0);
-            try {
-                List<Diagnosis> diagnoses = dbManager.getDiagnosesByPatient(patientId);
-                DefaultTableModel model = (DefaultTableModel) diagnosisTable.getModel();
-                model.setRowCount(0);
-                for (Diagnosis d : diagnoses) {
-                    model.addRow(new Object[] {
-                        "Recent", d.getDiseasePrediction(),
-                        String.format("%.2f%%", d.getConfidenceScore() * 100),
-                        d.getImagePath() != null ? "Yes" : "No"
-                    });
+        if (row < 0) {
+            return;
+        }
+        Integer patientId = patientModel.getPatientId(patientTable.convertRowIndexToModel(row));
+        if (patientId == null) {
+            return;
+        }
+
+        // Recently viewed patients render straight from memory, at most db.historyCache.ttlSeconds old
+        List<Diagnosis> cached = dbManager.getHistoryCache().getIfPresent(patientId);
+        if (cached != null) {
+            showDiagnoses(model, cached);
+            return;
+        }
+
+        SwingWorker<List<Diagnosis>, Void> worker = new SwingWorker<>() {
+            @Override
+            protected List<Diagnosis> doInBackground() throws Exception {
+                return dbManager.getHistoryCache().get(patientId);
+            }
+
+            @Override
+            protected void done() {
+                if (isCancelled() || diagnosisLoader != this) {
+                    return;
+                }
+                diagnosisLoader = null;
+                try {
+                    showDiagnoses(model, get());
+                } catch (InterruptedException | ExecutionException e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(PatientHistoryGUI.this, "Error loading diagnoses: " + cause.getMessage());
                 }
-            } catch (Exception e) {
-                JOptionPane.showMessageDialog(this, "Error loading diagnoses: " + e.getMessage());
             }
+        };
+        diagnosisLoader = worker;
+        worker.execute();
+    }
+
+    private void showDiagnoses(DefaultTableModel model, List<Diagnosis> diagnoses) {
+        for (Diagnosis d : diagnoses) {
+            model.addRow(new Object[] {
+                d.getAnalysisDate() != null ? d.getAnalysisDate().format(DATE_FORMAT) : "Recent",
+                d.getDiseasePrediction(),
+                String.format("%.2f%%", d.getConfidenceScore() * 100),
+                d.getImagePath()
+            });
+        }
+    }
+
+    @Override
+    public void dispose() {
+        if (diagnosisLoader != null) {
+            diagnosisLoader.cancel(true);
         }
+        patientModel.close();
+        super.dispose();
     }
 }
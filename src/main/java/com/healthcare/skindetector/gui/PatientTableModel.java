@@ -0,0 +1,192 @@
+package com.healthcare.skindetector.gui;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.table.AbstractTableModel;
+
+import com.healthcare.skindetector.database.DatabaseManager;
+import com.healthcare.skindetector.models.Patient;
+
+// Patient table that loads keyset pages on a background thread as rows scroll into view.
+// Only the most recently viewed pages are kept; evicted pages are re-fetched from their
+// saved start cursor. All model state is owned by the event dispatch thread.
+// A page that fails to load is retried after retryMillis, not on every repaint, and the error is
+// reported once until a page loads again.
+class PatientTableModel extends AbstractTableModel {
+
+    private static final String[] COLUMNS = {"ID", "Name", "Age", "Phone", "Email"};
+    private static final String LOADING = "Loading…";
+
+    private final DatabaseManager dbManager;
+    private final int pageSize;
+    private final long retryMillis;
+    private final Consumer<Exception> errorHandler;
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "history-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // pageStarts.get(i) is the last row of page i - 1, i.e. the cursor that page i is fetched after
+    private final List<Patient> pageStarts = new ArrayList<>();
+    private final Map<Integer, List<Patient>> pages;
+    private final Set<Integer> loadingPages = new HashSet<>();
+    // Pages whose last fetch failed, with the time they may be fetched again
+    private final Map<Integer, Long> failedPages = new HashMap<>();
+    private boolean failureReported;
+    private int loadedPageCount;
+    private int rowCount;
+    private boolean endReached;
+
+    PatientTableModel(DatabaseManager dbManager, int pageSize, int maxCachedPages, long retryMillis,
+            Consumer<Exception> errorHandler) {
+        this.dbManager = dbManager;
+        this.pageSize = pageSize;
+        this.retryMillis = retryMillis;
+        this.errorHandler = errorHandler;
+        this.pages = new LinkedHashMap<Integer, List<Patient>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Patient>> eldest) {
+                return size() > maxCachedPages;
+            }
+        };
+        pageStarts.add(null);
+    }
+
+    void start() {
+        requestPage(0);
+    }
+
+    void close() {
+        loader.shutdownNow();
+    }
+
+    // Null while the row's page is not loaded
+    Integer getPatientId(int row) {
+        Patient patient = patientAt(row, false);
+        return patient != null ? patient.getPatientId() : null;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        Patient p = patientAt(row, true);
+        if (p == null) {
+            return column == 1 ? LOADING : null;
+        }
+        switch (column) {
+            case 0: return p.getPatientId();
+            case 1: return p.getName();
+            case 2: return p.getAge();
+            case 3: return p.getPhone();
+            default: return p.getEmail();
+        }
+    }
+
+    private Patient patientAt(int row, boolean load) {
+        int page = row / pageSize;
+        List<Patient> rows = pages.get(page);
+        if (rows == null) {
+            if (load) {
+                requestPage(page);
+            }
+            return null;
+        }
+        // Rendering the last known page means the user is near the bottom: fetch the next one
+        if (load && !endReached && page == loadedPageCount - 1) {
+            requestPage(page + 1);
+        }
+        int index = row % pageSize;
+        return index < rows.size() ? rows.get(index) : null;
+    }
+
+    private void requestPage(int page) {
+        Long retryAt = failedPages.get(page);
+        if (retryAt != null && System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        if (loader.isShutdown() || page >= pageStarts.size() || !loadingPages.add(page)) {
+            return;
+        }
+        Patient after = pageStarts.get(page);
+        LocalDateTime afterDate = after != null ? after.getCreatedDate() : null;
+        int afterId = after != null ? after.getPatientId() : 0;
+
+        loader.execute(() -> {
+            try {
+                List<Patient> rows = dbManager.getPatientsPage(afterDate, afterId, pageSize);
+                SwingUtilities.invokeLater(() -> installPage(page, rows));
+            } catch (Exception e) {
+                SwingUtilities.invokeLater(() -> pageFailed(page, e));
+            }
+        });
+    }
+
+    private void pageFailed(int page, Exception e) {
+        loadingPages.remove(page);
+        failedPages.put(page, System.currentTimeMillis() + retryMillis);
+        Timer retry = new Timer((int) retryMillis, event -> {
+            failedPages.remove(page);
+            requestPage(page);
+        });
+        retry.setRepeats(false);
+        retry.start();
+        // Closing the error dialog repaints the table, which must not bring up another one
+        if (!failureReported) {
+            failureReported = true;
+            errorHandler.accept(e);
+        }
+    }
+
+    private void installPage(int page, List<Patient> rows) {
+        loadingPages.remove(page);
+        failedPages.remove(page);
+        failureReported = false;
+        pages.put(page, rows);
+
+        int firstRow = page * pageSize;
+        if (page < loadedPageCount) {
+            // Re-fetch of an evicted page
+            fireTableRowsUpdated(firstRow, Math.min(firstRow + pageSize, rowCount) - 1);
+            return;
+        }
+
+        loadedPageCount++;
+        if (rows.size() < pageSize) {
+            endReached = true;
+        } else {
+            pageStarts.add(rows.get(rows.size() - 1));
+        }
+        int previousCount = rowCount;
+        rowCount = firstRow + rows.size();
+        if (rowCount > previousCount) {
+            fireTableRowsInserted(previousCount, rowCount - 1);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.healthcare.skindetector.gui;
+
+import java.awt.Component;
+import java.awt.image.BufferedImage;
+
+import javax.swing.ImageIcon;
+import javax.swing.JLabel;
+import javax.swing.JTable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.table.DefaultTableCellRenderer;
+
+import com.healthcare.skindetector.utils.ThumbnailCache;
+
+// Renders an image path cell as its cached thumbnail, repainting the table once a pending one arrives
+class ThumbnailRenderer extends DefaultTableCellRenderer {
+
+    private final ThumbnailCache thumbnails;
+
+    ThumbnailRenderer(ThumbnailCache thumbnails) {
+        this.thumbnails = thumbnails;
+        setHorizontalAlignment(SwingConstants.CENTER);
+    }
+
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+            boolean hasFocus, int row, int column) {
+        JLabel label = (JLabel) super.getTableCellRendererComponent(table, null, isSelected, hasFocus, row, column);
+        label.setIcon(null);
+
+        String imagePath = (String) value;
+        if (imagePath == null) {
+            label.setText("No");
+            return label;
+        }
+
+        BufferedImage thumbnail = thumbnails.getOrLoad(imagePath, () -> SwingUtilities.invokeLater(table::repaint));
+        if (thumbnail != null) {
+            label.setIcon(new ImageIcon(thumbnail));
+            label.setText(null);
+        } else {
+            label.setText(thumbnails.isUnavailable(imagePath) ? "Missing" : "Loading…");
+        }
+        label.setToolTipText(imagePath);
+        return label;
+    }
+}
@@ -0,0 +1,440 @@
+package com.healthcare.skindetector.ingest;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.healthcare.skindetector.database.DatabaseManager;
+import com.healthcare.skindetector.models.Diagnosis;
+import com.healthcare.skindetector.models.PredictionResult;
+import com.healthcare.skindetector.utils.AppConfig;
+import com.healthcare.skindetector.utils.ImageUtils;
+import com.healthcare.skindetector.vertexai.Predictor;
+
+// Watches a folder and its subfolders for new images, analyzes each one once it has stopped
+// changing, and saves the diagnosis. The patient comes from the first folder level under the
+// watched root, e.g. inbox/1234/IMG_0001.jpg is saved for patient 1234.
+//
+// Finished files are appended to a ledger keyed by path, size and modification time, so a restart
+// skips them and a replaced file is analyzed again. Network shares do not always deliver change
+// events, so the tree is also rescanned periodically.
+public class WatchFolderIngest {
+
+    private static final long TICK_MILLIS = 500;
+
+    private final Predictor predictor;
+    private final DatabaseManager dbManager;
+    private final Path root;
+    private final Path ledgerFile;
+
+    private final int threads = AppConfig.getInt("ingest.threads", 4);
+    private final int queueCapacity = AppConfig.getInt("ingest.queueCapacity", 32);
+    private final long settleMillis = AppConfig.getLong("ingest.settleMillis", 2000L);
+    private final long rescanMillis = TimeUnit.SECONDS.toMillis(AppConfig.getLong("ingest.rescanSeconds", 60L));
+    private final int maxAttempts = AppConfig.getInt("ingest.maxAttempts", 3);
+    private final long retryDelayMillis = AppConfig.getLong("ingest.retryDelayMillis", 30_000L);
+    private final int defaultPatientId = AppConfig.getInt("ingest.defaultPatientId", 0);
+
+    // Files seen but not yet handed to a worker; owned by the watcher thread
+    private final Map<Path, Candidate> pending = new HashMap<>();
+    private final Set<Path> inProgress = ConcurrentHashMap.newKeySet();
+    private final Queue<Candidate> retries = new ConcurrentLinkedQueue<>();
+    private final Set<String> processed = ConcurrentHashMap.newKeySet();
+
+    // Running plus queued work; settled files beyond this stay pending until a worker frees up
+    private final Semaphore slots;
+    private final ExecutorService workers;
+
+    private WatchService watchService;
+    private FileChannel ledger;
+    private Thread watcher;
+    private volatile boolean running;
+    private volatile boolean watcherFailed;
+
+    public WatchFolderIngest(Predictor predictor, DatabaseManager dbManager, Path root, Path ledgerFile) {
+        this.predictor = predictor;
+        this.dbManager = dbManager;
+        this.root = root.toAbsolutePath().normalize();
+        this.ledgerFile = ledgerFile;
+        this.slots = new Semaphore(threads + queueCapacity);
+        this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ingest-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Command line entry point; args are everything after --watch. Blocks until shutdown and
+    // returns the process exit code.
+    public static int run(String[] args) {
+        Path root = null;
+        Path ledgerFile = Paths.get(AppConfig.getString("ingest.ledger",
+                Paths.get(System.getProperty("user.home"), ".mediscan", "ingest.ledger").toString()));
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--ledger")) {
+                    ledgerFile = Paths.get(args[++i]);
+                } else if (args[i].startsWith("--") || root != null) {
+                    throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+                } else {
+                    root = Paths.get(args[i]);
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            System.err.println(e.getMessage() != null ? e.getMessage() : "Missing option value");
+            root = null;
+        }
+        if (root == null || !Files.isDirectory(root)) {
+            System.err.println("Usage: --watch <folder> [--ledger file]");
+            return 2;
+        }
+
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        Predictor predictor = Predictor.fromConfig();
+        WatchFolderIngest ingest = new WatchFolderIngest(predictor, dbManager, root, ledgerFile);
+        try {
+            ingest.start();
+        } catch (IOException e) {
+            System.err.println("Could not watch " + root + ": " + e.getMessage());
+            predictor.close();
+            dbManager.close();
+            return 1;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            ingest.close();
+            predictor.close();
+            dbManager.close();
+        }, "ingest-shutdown"));
+
+        try {
+            ingest.watcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return ingest.watcherFailed ? 1 : 0;
+    }
+
+    public void start() throws IOException {
+        loadLedger();
+        Files.createDirectories(ledgerFile.toAbsolutePath().getParent());
+        ledger = FileChannel.open(ledgerFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        watchService = root.getFileSystem().newWatchService();
+        // Also picks up files that arrived while the service was down
+        registerTree(root);
+        running = true;
+        watcher = new Thread(this::runWatcher, "ingest-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        System.out.println("Watching " + root + " (" + processed.size() + " files already processed)");
+    }
+
+    private void runWatcher() {
+        long nextRescan = System.currentTimeMillis() + rescanMillis;
+        while (running) {
+            try {
+                WatchKey key = watchService.poll(TICK_MILLIS, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    handleEvents(key);
+                    key = watchService.poll();
+                }
+                long now = System.currentTimeMillis();
+                if (now >= nextRescan) {
+                    registerTree(root);
+                    nextRescan = now + rescanMillis;
+                }
+                Candidate retry;
+                while ((retry = retries.poll()) != null) {
+                    pending.put(retry.file, retry);
+                }
+                dispatchSettled(now);
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (IOException | UncheckedIOException e) {
+                // Share temporarily unreachable; the next rescan tries again
+                System.err.println("Could not scan " + root + ": " + e.getMessage());
+            } catch (RuntimeException e) {
+                System.err.println("Watcher stopped by an unexpected error: " + e);
+                e.printStackTrace();
+                watcherFailed = true;
+                return;
+            }
+        }
+    }
+
+    private void handleEvents(WatchKey key) throws IOException {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                registerTree(root);
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Gone again already
+                continue;
+            }
+            if (attributes.isDirectory()) {
+                // A new room or patient folder may already hold files by the time it is registered
+                registerTree(path);
+            } else {
+                track(path, attributes);
+            }
+        }
+        key.reset();
+    }
+
+    // The walk hands over each file's attributes with the directory listing, so a rescan of the
+    // whole share costs one pass and settled, already processed files are dropped right away
+    private void registerTree(Path dir) throws IOException {
+        Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attributes) throws IOException {
+                path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path path, BasicFileAttributes attributes) {
+                track(path, attributes);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path path, IOException e) {
+                // Deleted mid-walk or unreadable; a later event or rescan sees it again
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void track(Path file, BasicFileAttributes attributes) {
+        if (!attributes.isRegularFile() || !ImageUtils.isImageFile(file) || pending.containsKey(file)
+                || inProgress.contains(file)) {
+            return;
+        }
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (processed.contains(Candidate.ledgerKey(size, modified, file))) {
+            return;
+        }
+        Candidate candidate = new Candidate(file);
+        candidate.size = size;
+        candidate.modified = modified;
+        candidate.stableSince = System.currentTimeMillis();
+        pending.put(file, candidate);
+    }
+
+    // A file is handed to a worker once its size and modification time have not changed for
+    // settleMillis, so images still being copied onto the share are not read half-written
+    private void dispatchSettled(long now) {
+        Iterator<Candidate> it = pending.values().iterator();
+        while (it.hasNext()) {
+            Candidate candidate = it.next();
+            if (now < candidate.notBefore) {
+                continue;
+            }
+            BasicFileAttributes attributes;
+            try {
+                attributes = Files.readAttributes(candidate.file, BasicFileAttributes.class);
+            } catch (IOException e) {
+                // Deleted or moved away before it settled
+                it.remove();
+                continue;
+            }
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+            if (size != candidate.size || modified != candidate.modified) {
+                candidate.size = size;
+                candidate.modified = modified;
+                candidate.stableSince = now;
+                continue;
+            }
+            if (size == 0 || now - candidate.stableSince < settleMillis) {
+                continue;
+            }
+            if (processed.contains(candidate.ledgerKey())) {
+                it.remove();
+                continue;
+            }
+            if (!slots.tryAcquire()) {
+                return;
+            }
+            it.remove();
+            inProgress.add(candidate.file);
+            workers.execute(() -> process(candidate));
+        }
+    }
+
+    private void process(Candidate candidate) {
+        try {
+            Integer patientId = patientFor(candidate.file);
+            if (patientId == null) {
+                System.err.println("No patient folder for " + candidate.file + "; move it into a folder named"
+                        + " after the patient ID");
+                record(candidate, "unassigned");
+                return;
+            }
+
+            PredictionResult result = predictor.predictSkinDisease(candidate.file.toFile());
+            if (result.hasPrediction()) {
+                Diagnosis diagnosis = new Diagnosis();
+                diagnosis.setPatientId(patientId);
+                diagnosis.setDiseasePrediction(result.getTopLabel());
+                diagnosis.setConfidenceScore(result.getTopConfidence());
+                diagnosis.setImagePath(candidate.file.toString());
+                dbManager.saveDiagnosis(diagnosis);
+            }
+            // Recorded after the save: a crash in between analyzes the file again rather than losing it
+            record(candidate, "analyzed");
+            System.out.println("Ingested " + candidate.file + " for patient " + patientId + ": " + result);
+        } catch (IOException | IllegalArgumentException e) {
+            // The image itself cannot be read or is not valid; retrying will not change that
+            System.err.println("Could not ingest " + candidate.file + ": " + e.getMessage());
+            record(candidate, "unreadable");
+        } catch (Exception e) {
+            if (++candidate.attempts < maxAttempts) {
+                System.err.println("Could not ingest " + candidate.file + ", retrying: " + e.getMessage());
+                candidate.notBefore = System.currentTimeMillis() + retryDelayMillis;
+                retries.add(candidate);
+            } else {
+                // Database or endpoint outages pass, so this is not ledgered: the next rescan or a restart
+                // tries the file again
+                System.err.println("Giving up on " + candidate.file + " for now after " + maxAttempts
+                        + " attempts: " + e.getMessage());
+            }
+        } finally {
+            inProgress.remove(candidate.file);
+            slots.release();
+        }
+    }
+
+    // Files under <root>/<number>/... belong to that patient; anything else uses the configured default
+    private Integer patientFor(Path file) {
+        Path relative = root.relativize(file);
+        if (relative.getNameCount() > 1) {
+            try {
+                return Integer.parseInt(relative.getName(0).toString());
+            } catch (NumberFormatException e) {
+                // Not a patient folder
+            }
+        }
+        return defaultPatientId > 0 ? defaultPatientId : null;
+    }
+
+    private void loadLedger() throws IOException {
+        if (!Files.exists(ledgerFile)) {
+            return;
+        }
+        for (String line : Files.readAllLines(ledgerFile, StandardCharsets.UTF_8)) {
+            int tab = line.indexOf('\t');
+            // Earlier versions also ledgered files that only hit a transient failure; retry those
+            if (tab > 0 && !line.startsWith("failed\t")) {
+                processed.add(line.substring(tab + 1));
+            }
+        }
+    }
+
+    // One line per file with a final outcome (analyzed, unassigned or unreadable): status, size,
+    // modification time and path, forced to disk
+    private synchronized void record(Candidate candidate, String status) {
+        String key = candidate.ledgerKey();
+        processed.add(key);
+        try {
+            ByteBuffer line = ByteBuffer.wrap((status + '\t' + key + '\n').getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                ledger.write(line);
+            }
+            ledger.force(false);
+        } catch (IOException e) {
+            System.err.println("Could not update ingest ledger: " + e.getMessage());
+        }
+    }
+
+    public void close() {
+        running = false;
+        if (watcher != null) {
+            watcher.interrupt();
+            try {
+                watcher.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Let analyses already running finish and reach the ledger
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(60, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        try {
+            if (watchService != null) {
+                watchService.close();
+            }
+            synchronized (this) {
+                if (ledger != null) {
+                    ledger.close();
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error closing ingest service: " + e.getMessage());
+        }
+    }
+
+    private static final class Candidate {
+        final Path file;
+        long size = -1;
+        long modified;
+        long stableSince;
+        long notBefore;
+        int attempts;
+
+        Candidate(Path file) {
+            this.file = file;
+        }
+
+        String ledgerKey() {
+            return ledgerKey(size, modified, file);
+        }
+
+        static String ledgerKey(long size, long modified, Path file) {
+            return size + "\t" + modified + "\t" + file;
+        }
+    }
+}
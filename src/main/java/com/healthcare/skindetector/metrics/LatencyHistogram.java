@@ -0,0 +1,115 @@
+package com.healthcare.skindetector.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Lock-free latency histogram in microseconds with HdrHistogram-style log-linear buckets: every
+// power-of-two range is split into 8 equal sub-buckets, so any recorded value is known to within
+// 12.5% from 1 µs up to about 9.5 hours in a fixed 264-slot array. Recording is one atomic
+// increment; readers take snapshots and never block writers.
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 34;
+    static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    static final long MAX_MICROS = upperBoundMicros(BUCKETS - 1) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sumMicros = new LongAdder();
+
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, Math.min(nanos / 1000, MAX_MICROS));
+        counts.incrementAndGet(bucketIndex(micros));
+        sumMicros.add(micros);
+    }
+
+    // Concurrent recordings may or may not be included, but every count that is included is exact
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            total += copy[i];
+        }
+        return new Snapshot(copy, total, sumMicros.sum());
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (micros >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    // Exclusive upper bound of a bucket: it holds values in [upperBound(i - 1), upperBound(i))
+    static long upperBoundMicros(int index) {
+        if (index < SUB_BUCKETS) {
+            return index + 1;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + subBucket + 1)) << shift;
+    }
+
+    // Immutable copy of the counts; subtracting an older snapshot gives the distribution of a time window
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sumMicros;
+
+        Snapshot(long[] counts, long count, long sumMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMicros = sumMicros;
+        }
+
+        public static Snapshot empty() {
+            return new Snapshot(new long[BUCKETS], 0, 0);
+        }
+
+        public Snapshot minus(Snapshot earlier) {
+            long[] delta = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                delta[i] = counts[i] - earlier.counts[i];
+            }
+            return new Snapshot(delta, count - earlier.count, sumMicros - earlier.sumMicros);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSumMicros() {
+            return sumMicros;
+        }
+
+        // Upper bound of the bucket holding the given percentile (0-100); 0 when nothing was recorded
+        public long percentileMicros(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return upperBoundMicros(i);
+                }
+            }
+            return MAX_MICROS;
+        }
+
+        // Number of recorded values below the given bound, to bucket precision
+        public long countBelowMicros(long boundMicros) {
+            long below = 0;
+            for (int i = 0; i < BUCKETS && upperBoundMicros(i) <= boundMicros; i++) {
+                below += counts[i];
+            }
+            return below;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.healthcare.skindetector.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.healthcare.skindetector.utils.AppConfig;
+
+// Process-wide operation timers, grouped into families ("prediction", "db") and keyed by operation.
+// Looking up a timer allocates nothing once it exists, so call sites can fetch it per call.
+public class MetricsRegistry {
+
+    // Prometheus histogram bucket bounds, in seconds
+    private static final double[] EXPORT_BOUNDS = {
+        0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+    };
+
+    private static MetricsRegistry instance;
+
+    private final Map<String, Map<String, OperationTimer>> families = new ConcurrentHashMap<>();
+    private ScheduledExecutorService exporter;
+
+    public static synchronized MetricsRegistry getInstance() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+        }
+        return instance;
+    }
+
+    public OperationTimer timer(String family, String operation) {
+        return families.computeIfAbsent(family, f -> new ConcurrentHashMap<>())
+                .computeIfAbsent(operation, op -> new OperationTimer(family, op));
+    }
+
+    public List<OperationTimer> getTimers() {
+        List<OperationTimer> timers = new ArrayList<>();
+        for (Map<String, OperationTimer> family : families.values()) {
+            timers.addAll(family.values());
+        }
+        timers.sort(Comparator.comparing(OperationTimer::getFamily).thenComparing(OperationTimer::getOperation));
+        return timers;
+    }
+
+    // Prometheus text exposition format (version 0.0.4): one latency histogram and one error
+    // counter per family, with the operation as label
+    public String toPrometheusText() {
+        StringBuilder out = new StringBuilder();
+        List<OperationTimer> timers = getTimers();
+        String currentFamily = null;
+        List<OperationTimer> familyTimers = new ArrayList<>();
+        for (OperationTimer timer : timers) {
+            if (!timer.getFamily().equals(currentFamily)) {
+                appendFamily(out, currentFamily, familyTimers);
+                currentFamily = timer.getFamily();
+                familyTimers.clear();
+            }
+            familyTimers.add(timer);
+        }
+        appendFamily(out, currentFamily, familyTimers);
+        return out.toString();
+    }
+
+    private static void appendFamily(StringBuilder out, String family, List<OperationTimer> timers) {
+        if (family == null || timers.isEmpty()) {
+            return;
+        }
+        String histogram = "mediscan_" + family + "_duration_seconds";
+        out.append("# HELP ").append(histogram).append(" Latency of ").append(family).append(" operations\n");
+        out.append("# TYPE ").append(histogram).append(" histogram\n");
+        long[] errors = new long[timers.size()];
+        for (int t = 0; t < timers.size(); t++) {
+            OperationTimer timer = timers.get(t);
+            // Read once so the buckets, sum and count of one operation agree with each other
+            LatencyHistogram.Snapshot latency = timer.getLatency();
+            errors[t] = timer.getErrors();
+            String label = "operation=\"" + timer.getOperation() + "\"";
+            for (double bound : EXPORT_BOUNDS) {
+                long below = latency.countBelowMicros((long) (bound * 1_000_000));
+                out.append(histogram).append("_bucket{").append(label).append(",le=\"").append(format(bound))
+                        .append("\"} ").append(below).append('\n');
+            }
+            out.append(histogram).append("_bucket{").append(label).append(",le=\"+Inf\"} ")
+                    .append(latency.getCount()).append('\n');
+            out.append(histogram).append("_sum{").append(label).append("} ")
+                    .append(format(latency.getSumMicros() / 1e6)).append('\n');
+            out.append(histogram).append("_count{").append(label).append("} ")
+                    .append(latency.getCount()).append('\n');
+        }
+
+        String counter = "mediscan_" + family + "_errors_total";
+        out.append("# HELP ").append(counter).append(" Failed ").append(family).append(" operations\n");
+        out.append("# TYPE ").append(counter).append(" counter\n");
+        for (int t = 0; t < timers.size(); t++) {
+            out.append(counter).append("{operation=\"").append(timers.get(t).getOperation()).append("\"} ")
+                    .append(errors[t]).append('\n');
+        }
+    }
+
+    private static String format(double value) {
+        return Double.toString(value);
+    }
+
+    // Rewrites metrics.file every metrics.exportSeconds, e.g. for the node_exporter textfile
+    // collector. The file is replaced atomically, so a scraper never reads half of it.
+    public synchronized void startExportFromConfig() {
+        String file = AppConfig.getString("metrics.file", null);
+        if (exporter != null || file == null) {
+            return;
+        }
+        Path target = Paths.get(file).toAbsolutePath();
+        long intervalSeconds = AppConfig.getLong("metrics.exportSeconds", 15L);
+        exporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        exporter.scheduleAtFixedRate(() -> {
+            try {
+                writeTo(target);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not export metrics to " + target + ": " + e.getMessage());
+            }
+        }, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                writeTo(target);
+            } catch (IOException e) {
+                // Best effort on the way out
+            }
+        }, "metrics-final-export"));
+        System.out.println("Exporting metrics to " + target + " every " + intervalSeconds + " s.");
+    }
+
+    public void writeTo(Path target) throws IOException {
+        Path dir = target.getParent();
+        if (dir != null) {
+            Files.createDirectories(dir);
+        }
+        Path temp = Files.createTempFile(dir, target.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, toPrometheusText().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
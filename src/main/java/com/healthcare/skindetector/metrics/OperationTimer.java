@@ -0,0 +1,45 @@
+package com.healthcare.skindetector.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Latency and outcome of one kind of operation; failed calls are timed too and counted separately
+public class OperationTimer {
+
+    private final String family;
+    private final String operation;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    OperationTimer(String family, String operation) {
+        this.family = family;
+        this.operation = operation;
+    }
+
+    public void record(long nanos, boolean success) {
+        latency.recordNanos(nanos);
+        if (!success) {
+            errors.increment();
+        }
+    }
+
+    // Convenience for callers that measured with System.nanoTime()
+    public void recordSince(long startNanos, boolean success) {
+        record(System.nanoTime() - startNanos, success);
+    }
+
+    public String getFamily() {
+        return family;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public LatencyHistogram.Snapshot getLatency() {
+        return latency.snapshot();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+}
@@ -1,11 +1,14 @@
 package com.healthcare.skindetector.models;
 
+import java.time.LocalDateTime;
+
 public class Diagnosis {
     private int diagnosisId;
     private int patientId;
     private String diseasePrediction;
     private double confidenceScore;
     private String imagePath;
+    private LocalDateTime analysisDate;
 
     public Diagnosis() {}
 
@@ -48,4 +51,12 @@ public class Diagnosis {
     public void setImagePath(String imagePath) {
         this.imagePath = imagePath;
     }
+
+    public LocalDateTime getAnalysisDate() {
+        return analysisDate;
+    }
+
+    public void setAnalysisDate(LocalDateTime analysisDate) {
+        this.analysisDate = analysisDate;
+    }
 }
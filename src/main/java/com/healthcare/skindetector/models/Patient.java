@@ -1,11 +1,14 @@
 package com.healthcare.skindetector.models;
 
+import java.time.LocalDateTime;
+
 public class Patient {
     private int patientId;
     private String name;
     private int age;
     private String phone;
     private String email;
+    private LocalDateTime createdDate;
 
     public Patient() {}
 
@@ -39,6 +42,12 @@ public class Patient {
     public void setEmail(String email) {
         this.email = email;
     }
+    public LocalDateTime getCreatedDate() {
+        return createdDate;
+    }
+    public void setCreatedDate(LocalDateTime createdDate) {
+        this.createdDate = createdDate;
+    }
     @Override
     public String toString() {
         return name + " (Age: " + age + ")";
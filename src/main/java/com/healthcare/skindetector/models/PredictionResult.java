@@ -0,0 +1,146 @@
+package com.healthcare.skindetector.models;
+
+import java.time.LocalDateTime;
+
+public class PredictionResult {
+    private final String[] labels;
+    private final float[] confidences;
+    private final String endpoint;
+    private final long latencyNanos;
+    private final LocalDateTime analysisTime;
+    private final boolean cached;
+    private final String rawPrediction;
+
+    // Rendered on first display only; batch and persistence paths never need it
+    private String report;
+
+    // labels and confidences are parallel arrays in model order (highest confidence first)
+    public PredictionResult(String[] labels, float[] confidences, String endpoint, long latencyNanos,
+            LocalDateTime analysisTime, boolean cached, String rawPrediction) {
+        if (labels.length != confidences.length) {
+            throw new IllegalArgumentException("labels and confidences must have the same length");
+        }
+        this.labels = labels;
+        this.confidences = confidences;
+        this.endpoint = endpoint;
+        this.latencyNanos = latencyNanos;
+        this.analysisTime = analysisTime;
+        this.cached = cached;
+        this.rawPrediction = rawPrediction;
+    }
+
+    public PredictionResult asCached() {
+        return new PredictionResult(labels, confidences, endpoint, latencyNanos, analysisTime, true, rawPrediction);
+    }
+
+    public int getLabelCount() {
+        return labels.length;
+    }
+
+    public String getLabel(int index) {
+        return labels[index];
+    }
+
+    public float getConfidence(int index) {
+        return confidences[index];
+    }
+
+    public boolean hasPrediction() {
+        return labels.length > 0;
+    }
+
+    public String getTopLabel() {
+        return hasPrediction() ? labels[0] : "Unknown";
+    }
+
+    // 0.0 - 1.0
+    public double getTopConfidence() {
+        return hasPrediction() ? confidences[0] : 0.0;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public LocalDateTime getAnalysisTime() {
+        return analysisTime;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    // Original prediction payload, kept only when no labels could be extracted from it
+    public String getRawPrediction() {
+        return rawPrediction;
+    }
+
+    public synchronized String getReport() {
+        if (report == null) {
+            report = renderReport();
+        }
+        return report;
+    }
+
+    private String renderReport() {
+        StringBuilder result = new StringBuilder();
+        result.append("SKIN DISEASE ANALYSIS RESULTS\n");
+        result.append("=====================================\n\n");
+
+        if (!hasPrediction() && rawPrediction == null) {
+            result.append("⚠️ No predictions returned from the model.\n");
+            result.append("Please check if the endpoint is properly deployed.\n");
+            return result.toString();
+        }
+
+        if (hasPrediction()) {
+            result.append("🔍 Detected Condition: ").append(labels[0]).append("\n\n");
+
+            int confidencePercent = Math.round(confidences[0] * 100);
+            result.append("📊 Confidence Level: ").append(confidencePercent).append("%\n\n");
+
+            // Add confidence interpretation
+            if (confidencePercent >= 90) {
+                result.append("✅ Reliability: Very High\n\n");
+            } else if (confidencePercent >= 75) {
+                result.append("✅ Reliability: High\n\n");
+            } else if (confidencePercent >= 60) {
+                result.append("⚠️ Reliability: Moderate\n\n");
+            } else {
+                result.append("⚠️ Reliability: Low - Consider retaking image\n\n");
+            }
+
+            if (labels.length > 1) {
+                result.append("📋 Other Possibilities:\n");
+                for (int i = 1; i < labels.length; i++) {
+                    result.append("   • ").append(labels[i]).append(" - ")
+                            .append(Math.round(confidences[i] * 100)).append("%\n");
+                }
+                result.append("\n");
+            }
+        } else {
+            result.append("⚠️ Unable to extract prediction from response.\n\n");
+            result.append("Raw response:\n").append(rawPrediction).append("\n\n");
+        }
+
+        // Add professional disclaimer
+        result.append("⚕️ IMPORTANT MEDICAL DISCLAIMER:\n");
+        result.append("This AI analysis is for informational purposes only.\n");
+        result.append("Please consult with a qualified dermatologist or\n");
+        result.append("healthcare professional for proper medical diagnosis\n");
+        result.append("and treatment recommendations.\n\n");
+
+        result.append("🕒 Analysis Time: ").append(analysisTime).append("\n");
+
+        return result.toString();
+    }
+
+    @Override
+    public String toString() {
+        return getTopLabel() + " (" + Math.round(getTopConfidence() * 100) + "%)";
+    }
+}
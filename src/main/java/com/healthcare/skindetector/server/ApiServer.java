@@ -0,0 +1,505 @@
+package com.healthcare.skindetector.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.healthcare.skindetector.database.DatabaseManager;
+import com.healthcare.skindetector.database.WriteBehindQueue;
+import com.healthcare.skindetector.metrics.MetricsRegistry;
+import com.healthcare.skindetector.models.Diagnosis;
+import com.healthcare.skindetector.models.Patient;
+import com.healthcare.skindetector.models.PredictionResult;
+import com.healthcare.skindetector.utils.AppConfig;
+import com.healthcare.skindetector.vertexai.Predictor;
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+import com.sun.net.httpserver.HttpServer;
+
+// JSON API over one shared predictor, write-behind queue and connection pool, so workstations
+// can act as thin clients instead of each holding their own gRPC channel and DB connections.
+//
+//   GET  /api/health
+//   POST /api/predict                     image bytes in the body
+//   POST /api/patients                    {"name", "age", "phone", "email", "diagnoses": [...]};
+//                                         an Idempotency-Key header makes retries safe
+//   GET  /api/patients?afterDate=&afterId=&limit=
+//   GET  /api/patients/{id}/diagnoses
+//   GET  /metrics                         Prometheus text format
+// Responses carry patient details, so the server listens on server.bindAddress (loopback unless
+// changed) and, when server.authToken is set, wants "Authorization: Bearer <token>" on everything
+// but /api/health.
+public class ApiServer {
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(LocalDateTime.class, new LocalDateTimeAdapter().nullSafe())
+            .create();
+
+    private final Predictor predictor;
+    private final DatabaseManager dbManager;
+    private final WriteBehindQueue writeQueue;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private final long maxUploadBytes = AppConfig.getLong("server.maxUploadBytes", 20L * 1024 * 1024);
+    private final int maxPageSize = AppConfig.getInt("server.maxPageSize", 500);
+    private final long saveTimeoutMillis = AppConfig.getLong("server.saveTimeoutMillis", 10_000L);
+
+    // Saves by Idempotency-Key, so a client retrying after a timeout or a lost response gets the
+    // patient of its first attempt instead of a second copy. Oldest keys are forgotten first.
+    private final int maxIdempotencyKeys = AppConfig.getInt("server.idempotencyKeys", 10_000);
+    private final Map<String, CompletableFuture<Integer>> savesByKey = new LinkedHashMap<String, CompletableFuture<Integer>>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<Integer>> eldest) {
+            return size() > maxIdempotencyKeys;
+        }
+    };
+
+    public ApiServer(Predictor predictor, DatabaseManager dbManager, WriteBehindQueue writeQueue,
+            InetSocketAddress address) throws IOException {
+        this.predictor = predictor;
+        this.dbManager = dbManager;
+        this.writeQueue = writeQueue;
+        this.server = HttpServer.create(address, AppConfig.getInt("server.backlog", 256));
+        this.executor = createExecutor(AppConfig.getInt("server.threads", 64));
+        server.setExecutor(executor);
+        server.createContext("/api/health", exchange -> handle(exchange, "health", this::health));
+        Authenticator authenticator = BearerAuthenticator.fromConfig();
+        List<HttpContext> protectedContexts = Arrays.asList(
+                server.createContext("/api/predict", exchange -> handle(exchange, "predict", this::predict)),
+                server.createContext("/api/patients", exchange -> handle(exchange, "patients", this::patients)),
+                server.createContext("/metrics", ApiServer::metrics));
+        if (authenticator != null) {
+            for (HttpContext context : protectedContexts) {
+                context.setAuthenticator(authenticator);
+            }
+        } else if (!address.getAddress().isLoopbackAddress()) {
+            System.err.println("Warning: API server reachable on " + address.getAddress().getHostAddress()
+                    + " without server.authToken; put it behind an authenticating reverse proxy");
+        }
+    }
+
+    // Command line entry point; args are everything after --server. Runs until the JVM shuts down.
+    public static int run(String[] args) {
+        int port = AppConfig.getInt("server.port", 8080);
+        String bindAddress = AppConfig.getString("server.bindAddress", "127.0.0.1");
+        try {
+            if (args.length == 2 && args[0].equals("--port")) {
+                port = Integer.parseInt(args[1]);
+            } else if (args.length != 0) {
+                throw new IllegalArgumentException("Unexpected arguments");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Usage: --server [--port <port>]");
+            return 2;
+        }
+
+        DatabaseManager dbManager = DatabaseManager.getInstance();
+        dbManager.initializeDatabase();
+        WriteBehindQueue writeQueue = WriteBehindQueue.getInstance();
+        Predictor predictor = Predictor.fromConfig();
+        ApiServer apiServer;
+        try {
+            apiServer = new ApiServer(predictor, dbManager, writeQueue, new InetSocketAddress(bindAddress, port));
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Could not start server on " + bindAddress + ":" + port + ": " + e.getMessage());
+            predictor.close();
+            writeQueue.close();
+            dbManager.close();
+            return 1;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            apiServer.stop();
+            predictor.close();
+            writeQueue.close();
+            dbManager.close();
+        }, "server-shutdown"));
+        apiServer.start();
+        return 0;
+    }
+
+    // Virtual threads (JDK 21+) let every request block on Vertex or JDBC without a large pool;
+    // looked up reflectively because the build targets Java 11. Older JDKs get a fixed pool.
+    private static ExecutorService createExecutor(int threads) {
+        if (AppConfig.getBoolean("server.virtualThreads", true)) {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                System.out.println("HTTP server using virtual threads");
+                return (ExecutorService) factory.invoke(null);
+            } catch (ReflectiveOperationException e) {
+                // Not available on this JDK
+            }
+        }
+        System.out.println("HTTP server using " + threads + " worker threads");
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "http-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("API server listening on " + server.getAddress().getAddress().getHostAddress()
+                + ":" + getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Requests already running get a few seconds to finish
+    public void stop() {
+        server.stop(3);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Object health(HttpExchange exchange) throws HttpException {
+        requireMethod(exchange, "GET");
+        Map<String, Object> status = new HashMap<>();
+        status.put("status", "ok");
+        status.put("pendingWrites", writeQueue.getPendingCount());
+        return status;
+    }
+
+    private Object predict(HttpExchange exchange) throws Exception {
+        requireMethod(exchange, "POST");
+        // The predictor hashes and preprocesses from a file, so the upload is spooled to disk
+        Path upload = Files.createTempFile("upload", ".img");
+        try {
+            try (InputStream in = exchange.getRequestBody(); OutputStream out = Files.newOutputStream(upload)) {
+                byte[] buffer = new byte[64 * 1024];
+                long total = 0;
+                int read;
+                while ((read = in.read(buffer)) > 0) {
+                    total += read;
+                    if (total > maxUploadBytes) {
+                        throw new HttpException(413, "Image larger than " + maxUploadBytes + " bytes");
+                    }
+                    out.write(buffer, 0, read);
+                }
+                if (total == 0) {
+                    throw new HttpException(400, "Request body must contain the image");
+                }
+            }
+            try {
+                return toJson(predictor.predictSkinDiseaseAsync(upload.toFile()).get());
+            } catch (ExecutionException e) {
+                throw new HttpException(502, "Prediction failed: " + e.getCause().getMessage());
+            }
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    private Object patients(HttpExchange exchange) throws Exception {
+        String[] segments = exchange.getRequestURI().getPath().split("/");
+        // ["", "api", "patients"] or ["", "api", "patients", "{id}", "diagnoses"]
+        if (segments.length == 3) {
+            if (exchange.getRequestMethod().equals("POST")) {
+                return savePatient(exchange);
+            }
+            requireMethod(exchange, "GET");
+            return listPatients(exchange);
+        }
+        if (segments.length == 5 && segments[4].equals("diagnoses")) {
+            requireMethod(exchange, "GET");
+            try {
+                return dbManager.getHistoryCache().get(Integer.parseInt(segments[3]));
+            } catch (NumberFormatException e) {
+                throw new HttpException(400, "Invalid patient ID: " + segments[3]);
+            }
+        }
+        throw new HttpException(404, "Not found");
+    }
+
+    private Object savePatient(HttpExchange exchange) throws Exception {
+        SaveRequest request;
+        try (InputStreamReader reader = new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)) {
+            request = GSON.fromJson(reader, SaveRequest.class);
+        } catch (JsonParseException e) {
+            throw new HttpException(400, "Invalid JSON: " + e.getMessage());
+        }
+        if (request == null || request.name == null || request.name.trim().isEmpty()) {
+            throw new HttpException(400, "Patient name is required");
+        }
+
+        Patient patient = new Patient();
+        patient.setName(request.name.trim());
+        patient.setAge(request.age);
+        patient.setPhone(request.phone);
+        patient.setEmail(request.email);
+        List<Diagnosis> diagnoses = new ArrayList<>();
+        if (request.diagnoses != null) {
+            for (DiagnosisInput input : request.diagnoses) {
+                Diagnosis diagnosis = new Diagnosis();
+                diagnosis.setDiseasePrediction(input.diseasePrediction);
+                diagnosis.setConfidenceScore(input.confidenceScore);
+                diagnosis.setImagePath(input.imagePath);
+                diagnoses.add(diagnosis);
+            }
+        }
+
+        // Concurrent saves from many clients are grouped into shared commits by the write-behind queue
+        String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+        CompletableFuture<Integer> save = submitOnce(key, patient, diagnoses);
+        int patientId;
+        try {
+            patientId = save.get(saveTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RejectedExecutionException) {
+                throw new HttpException(503, "Server busy, try again: " + e.getCause().getMessage());
+            }
+            throw new HttpException(500, "Could not save patient: " + e.getCause().getMessage());
+        } catch (TimeoutException e) {
+            throw new HttpException(504, key != null
+                    ? "Save still queued and may yet complete; retry with the same Idempotency-Key"
+                    : "Save still queued and may yet complete; retrying without an Idempotency-Key may save the patient twice");
+        }
+        exchange.getResponseHeaders().set("Location", "/api/patients/" + patientId);
+        return new StatusBody(201, Collections.singletonMap("patientId", patientId));
+    }
+
+    // A key whose earlier save failed is submitted again; one still pending or saved is shared.
+    // The key is claimed before submitting, so concurrent retries cannot both reach the queue.
+    private CompletableFuture<Integer> submitOnce(String key, Patient patient, List<Diagnosis> diagnoses) {
+        if (key == null) {
+            return writeQueue.submit(patient, diagnoses);
+        }
+        CompletableFuture<Integer> claimed = new CompletableFuture<>();
+        synchronized (savesByKey) {
+            CompletableFuture<Integer> earlier = savesByKey.get(key);
+            if (earlier != null && !earlier.isCompletedExceptionally()) {
+                return earlier;
+            }
+            savesByKey.put(key, claimed);
+        }
+        // Submitted outside the lock, as a full queue makes submit() wait
+        writeQueue.submit(patient, diagnoses).whenComplete((patientId, error) -> {
+            if (error == null) {
+                claimed.complete(patientId);
+            } else {
+                claimed.completeExceptionally(error);
+            }
+        });
+        return claimed;
+    }
+
+    private Object listPatients(HttpExchange exchange) throws Exception {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        LocalDateTime afterDate = null;
+        int afterId = 0;
+        int limit = 100;
+        try {
+            if (query.containsKey("afterDate")) {
+                afterDate = LocalDateTime.parse(query.get("afterDate"));
+                afterId = Integer.parseInt(query.getOrDefault("afterId", "0"));
+            }
+            if (query.containsKey("limit")) {
+                limit = Math.max(1, Math.min(maxPageSize, Integer.parseInt(query.get("limit"))));
+            }
+        } catch (NumberFormatException | DateTimeParseException e) {
+            throw new HttpException(400, "Invalid paging parameters: " + e.getMessage());
+        }
+        return dbManager.getPatientsPage(afterDate, afterId, limit);
+    }
+
+    private static JsonObject toJson(PredictionResult result) {
+        JsonObject json = new JsonObject();
+        json.addProperty("label", result.getTopLabel());
+        json.addProperty("confidence", (float) result.getTopConfidence());
+        json.addProperty("cached", result.isCached());
+        json.addProperty("latencyMs", result.getLatencyNanos() / 1_000_000);
+        JsonArray predictions = new JsonArray();
+        for (int i = 0; i < result.getLabelCount(); i++) {
+            JsonObject prediction = new JsonObject();
+            prediction.addProperty("label", result.getLabel(i));
+            prediction.addProperty("confidence", result.getConfidence(i));
+            predictions.add(prediction);
+        }
+        json.add("predictions", predictions);
+        return json;
+    }
+
+    private interface Route {
+        Object handle(HttpExchange exchange) throws Exception;
+    }
+
+    private static void handle(HttpExchange exchange, String name, Route route) throws IOException {
+        long start = System.nanoTime();
+        int status = 200;
+        Object body;
+        try {
+            body = route.handle(exchange);
+            if (body instanceof StatusBody) {
+                status = ((StatusBody) body).status;
+                body = ((StatusBody) body).body;
+            }
+        } catch (HttpException e) {
+            status = e.status;
+            body = Collections.singletonMap("error", e.getMessage());
+        } catch (Exception e) {
+            System.err.println("Error handling " + exchange.getRequestMethod() + " " + exchange.getRequestURI()
+                    + ": " + e.getMessage());
+            status = 500;
+            body = Collections.singletonMap("error", "Internal server error");
+        }
+
+        try {
+            byte[] bytes = GSON.toJson(body).getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+            MetricsRegistry.getInstance().timer("http", name).recordSince(start, status < 500);
+        }
+    }
+
+    // Plain text rather than JSON, so it bypasses handle()
+    private static void metrics(HttpExchange exchange) throws IOException {
+        try {
+            byte[] bytes = MetricsRegistry.getInstance().toPrometheusText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void requireMethod(HttpExchange exchange, String method) throws HttpException {
+        if (!exchange.getRequestMethod().equals(method)) {
+            exchange.getResponseHeaders().set("Allow", method);
+            throw new HttpException(405, "Use " + method);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                query.put(URLDecoder.decode(pair.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return query;
+    }
+
+    // Constant-time comparison, so response timing does not give the token away byte by byte
+    private static final class BearerAuthenticator extends Authenticator {
+        private final byte[] expected;
+
+        private BearerAuthenticator(String token) {
+            this.expected = ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        }
+
+        // Null when server.authToken is unset
+        static BearerAuthenticator fromConfig() {
+            String token = AppConfig.getString("server.authToken", "");
+            return token.trim().isEmpty() ? null : new BearerAuthenticator(token.trim());
+        }
+
+        @Override
+        public Result authenticate(HttpExchange exchange) {
+            String header = exchange.getRequestHeaders().getFirst("Authorization");
+            if (header != null && MessageDigest.isEqual(expected, header.trim().getBytes(StandardCharsets.UTF_8))) {
+                return new Success(new HttpPrincipal("client", "mediscan"));
+            }
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer realm=\"mediscan\"");
+            return new Failure(401);
+        }
+    }
+
+    private static final class HttpException extends Exception {
+        final int status;
+
+        HttpException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static final class StatusBody {
+        final int status;
+        final Object body;
+
+        StatusBody(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+
+    private static final class SaveRequest {
+        String name;
+        int age;
+        String phone;
+        String email;
+        List<DiagnosisInput> diagnoses;
+    }
+
+    private static final class DiagnosisInput {
+        String diseasePrediction;
+        double confidenceScore;
+        String imagePath;
+    }
+
+    private static final class LocalDateTimeAdapter extends TypeAdapter<LocalDateTime> {
+        @Override
+        public void write(JsonWriter out, LocalDateTime value) throws IOException {
+            out.value(value.toString());
+        }
+
+        @Override
+        public LocalDateTime read(JsonReader in) throws IOException {
+            return LocalDateTime.parse(in.nextString());
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.healthcare.skindetector.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Properties;
+
+public final class AppConfig {
+
+    private static final String RESOURCE = "/application.properties";
+    private static final Properties PROPERTIES = load();
+
+    private AppConfig() {}
+
+    private static Properties load() {
+        Properties properties = new Properties();
+        try (InputStream in = AppConfig.class.getResourceAsStream(RESOURCE)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read " + RESOURCE + ": " + e.getMessage());
+        }
+        return properties;
+    }
+
+    // Lookup order: -Dkey=value, then environment (db.url -> DB_URL, vertex.batch.maxInstances ->
+    // VERTEX_BATCH_MAX_INSTANCES), then application.properties
+    public static String getString(String key, String defaultValue) {
+        String value = System.getProperty(key);
+        if (value == null) {
+            value = System.getenv(environmentName(key));
+        }
+        if (value == null) {
+            // Earlier releases did not split camelCase words (VERTEX_BATCH_MAXINSTANCES)
+            value = System.getenv(key.replace('.', '_').toUpperCase(Locale.ROOT));
+        }
+        if (value == null) {
+            value = PROPERTIES.getProperty(key);
+        }
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
+
+    // Dots and camelCase word boundaries become underscores
+    static String environmentName(String key) {
+        StringBuilder name = new StringBuilder(key.length() + 8);
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (c == '.') {
+                name.append('_');
+            } else {
+                if (Character.isUpperCase(c) && i > 0 && Character.isLowerCase(key.charAt(i - 1))) {
+                    name.append('_');
+                }
+                name.append(Character.toUpperCase(c));
+            }
+        }
+        return name.toString();
+    }
+
+    public static int getInt(String key, int defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid integer for " + key + ": " + value, e);
+        }
+    }
+
+    public static long getLong(String key, long defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value != null ? Long.parseLong(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value, e);
+        }
+    }
+
+    public static double getDouble(String key, double defaultValue) {
+        String value = getString(key, null);
+        try {
+            return value != null ? Double.parseDouble(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid number for " + key + ": " + value, e);
+        }
+    }
+
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = getString(key, null);
+        return value != null ? Boolean.parseBoolean(value) : defaultValue;
+    }
+}
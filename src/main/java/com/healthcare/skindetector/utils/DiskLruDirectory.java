@@ -0,0 +1,144 @@
+package com.healthcare.skindetector.utils;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Disk tier shared by the prediction and thumbnail caches: one file per key in a directory kept
+// under a byte budget. A file's modification time records its last use, and the least recently
+// used files are deleted once the budget is exceeded. Files are replaced atomically, so a reader
+// never sees half of one.
+public final class DiskLruDirectory {
+
+    private final Path directory;
+    private final String suffix;
+    private final long maxBytes;
+    private final AtomicLong bytes = new AtomicLong();
+
+    private DiskLruDirectory(Path directory, String suffix, long maxBytes) {
+        this.directory = directory;
+        this.suffix = suffix;
+        this.maxBytes = maxBytes;
+    }
+
+    // Null, after logging why, when the directory cannot be created or read; the caller then
+    // runs memory-only
+    public static DiskLruDirectory open(Path dir, String suffix, long maxBytes, String description) {
+        DiskLruDirectory disk = new DiskLruDirectory(dir, suffix, maxBytes);
+        try {
+            Files.createDirectories(dir);
+            long total = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + suffix)) {
+                for (Path file : files) {
+                    total += Files.size(file);
+                }
+            }
+            disk.bytes.set(total);
+            return disk;
+        } catch (IOException e) {
+            System.err.println(description + " running memory-only, cannot use " + dir + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Null when there is no file for the key
+    public byte[] read(String key) throws IOException {
+        try {
+            return Files.readAllBytes(file(key));
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    // Marks the key as just used, so eviction takes it last
+    public void touch(String key) throws IOException {
+        Files.setLastModifiedTime(file(key), FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    public void write(String key, byte[] content) throws IOException {
+        Path file = file(key);
+        long previous = Files.exists(file) ? Files.size(file) : 0;
+        Path temp = Files.createTempFile(directory, key, ".tmp");
+        try {
+            Files.write(temp, content);
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        if (bytes.addAndGet(content.length - previous) > maxBytes) {
+            evict();
+        }
+    }
+
+    public void delete(String key) {
+        delete(file(key));
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + suffix);
+    }
+
+    // Removes least recently used files until the directory is back under 90% of its budget
+    private synchronized void evict() {
+        if (bytes.get() <= maxBytes) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + suffix)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            System.err.println("Could not scan " + directory + ": " + e.getMessage());
+            return;
+        }
+        files.sort(Comparator.comparingLong(DiskLruDirectory::lastModified));
+
+        long target = maxBytes * 9 / 10;
+        for (Path file : files) {
+            if (bytes.get() <= target) {
+                break;
+            }
+            delete(file);
+        }
+    }
+
+    private void delete(Path file) {
+        try {
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                bytes.addAndGet(-size);
+            }
+        } catch (IOException e) {
+            // Already gone or locked by another process; it will be retried on the next eviction
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    // Lower-case hex of a digest, for use as a key
+    public static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
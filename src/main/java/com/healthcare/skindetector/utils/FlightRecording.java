@@ -0,0 +1,57 @@
+package com.healthcare.skindetector.utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+
+// Continuous Java Flight Recorder recording of the app's own events (image decode/resize/encode,
+// Base64 encoding, prediction calls, database operations) on top of the JDK's low-overhead
+// "default" settings. Older data is discarded beyond jfr.maxSizeMB / jfr.maxAgeMinutes, and what
+// is left is written to jfr.dir when the JVM exits. A snapshot can be taken at any time with
+//   jcmd <pid> JFR.dump name=mediscan filename=snapshot.jfr
+public class FlightRecording {
+
+    private static final String NAME = "mediscan";
+
+    private static Recording recording;
+
+    private FlightRecording() {}
+
+    public static synchronized void startFromConfig() {
+        if (recording != null || !AppConfig.getBoolean("jfr.enabled", false)) {
+            return;
+        }
+        if (!FlightRecorder.isAvailable()) {
+            System.err.println("Flight recording requested, but JFR is not available in this JVM.");
+            return;
+        }
+
+        String defaultDir = Paths.get(System.getProperty("user.home"), ".mediscan", "recordings").toString();
+        Path dir = Paths.get(AppConfig.getString("jfr.dir", defaultDir));
+        try {
+            Files.createDirectories(dir);
+            Recording started = new Recording(Configuration.getConfiguration(AppConfig.getString("jfr.settings", "default")));
+            started.setName(NAME);
+            started.setToDisk(true);
+            started.setMaxSize(AppConfig.getLong("jfr.maxSizeMB", 100L) * 1024 * 1024);
+            started.setMaxAge(Duration.ofMinutes(AppConfig.getLong("jfr.maxAgeMinutes", 360L)));
+            started.setDestination(dir.resolve(NAME + "-"
+                    + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss")) + ".jfr"));
+            started.setDumpOnExit(true);
+            started.start();
+            recording = started;
+            System.out.println("Flight recording started; written to " + started.getDestination() + " on exit.");
+        } catch (IOException | ParseException e) {
+            System.err.println("Could not start flight recording: " + e.getMessage());
+        }
+    }
+}
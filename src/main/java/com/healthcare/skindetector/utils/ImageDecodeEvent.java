@@ -0,0 +1,43 @@
+package com.healthcare.skindetector.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.healthcare.skindetector.ImageDecode")
+@Label("Image Decode")
+@Description("Reading an image file into memory, with source subsampling")
+@Category({"MediScan", "Image"})
+@StackTrace(false)
+final class ImageDecodeEvent extends Event {
+
+    @Label("Path")
+    String path;
+
+    @Label("Format")
+    String format;
+
+    @Label("File Size")
+    @DataAmount
+    long fileBytes;
+
+    @Label("Source Width")
+    int sourceWidth;
+
+    @Label("Source Height")
+    int sourceHeight;
+
+    @Label("Subsampling")
+    @Description("Every n-th pixel was decoded in each direction")
+    int subsampling;
+
+    @Label("Decoded Width")
+    int decodedWidth;
+
+    @Label("Decoded Height")
+    int decodedHeight;
+}
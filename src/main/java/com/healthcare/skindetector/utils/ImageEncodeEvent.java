@@ -0,0 +1,30 @@
+package com.healthcare.skindetector.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.healthcare.skindetector.ImageEncode")
+@Label("Image Encode")
+@Description("JPEG compression of a resized image")
+@Category({"MediScan", "Image"})
+@StackTrace(false)
+final class ImageEncodeEvent extends Event {
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Quality")
+    float quality;
+
+    @Label("Encoded Size")
+    @DataAmount
+    long encodedBytes;
+}
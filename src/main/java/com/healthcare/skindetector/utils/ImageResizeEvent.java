@@ -0,0 +1,31 @@
+package com.healthcare.skindetector.utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.healthcare.skindetector.ImageResize")
+@Label("Image Resize")
+@Description("Scaling a decoded image to fit a target size")
+@Category({"MediScan", "Image"})
+@StackTrace(false)
+final class ImageResizeEvent extends Event {
+
+    @Label("Source Width")
+    int sourceWidth;
+
+    @Label("Source Height")
+    int sourceHeight;
+
+    @Label("Width")
+    int width;
+
+    @Label("Height")
+    int height;
+
+    @Label("Halving Steps")
+    int halvingSteps;
+}
@@ -1,32 +1,198 @@
 package com.healthcare.skindetector.utils;
 
+import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
 
+import javax.imageio.IIOImage;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
 
 public class ImageUtils {
+    // Same formats as the upload dialog in MainGUI
+    private static final Set<String> IMAGE_EXTENSIONS =
+            new HashSet<>(Arrays.asList("jpg", "jpeg", "png", "gif", "bmp"));
+
+    // Reused between resizes on the same thread; soft so an idle thread does not pin them
+    private static final ThreadLocal<SoftReference<BufferedImage[]>> SCRATCH = new ThreadLocal<>();
+
+    public static boolean isImageFile(Path file) {
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot > 0 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
     public static BufferedImage loadAndResizeImage(File file, int maxWidth, int maxHeight) throws IOException {
-        BufferedImage original = ImageIO.read(file);
+        BufferedImage original = readSubsampled(file, maxWidth, maxHeight);
+        if (original == null) {
+            throw new IOException("Unsupported image format: " + file);
+        }
+        return resizeToFit(original, maxWidth, maxHeight);
+    }
+
+    // Decodes only every n-th pixel in each direction, choosing n so the result is still at least
+    // twice the target size; a 48 MP photo read for a 64px thumbnail never materialises at full size.
+    // Like ImageIO.read, returns null when no reader supports the format.
+    public static BufferedImage readSubsampled(File file, int maxWidth, int maxHeight) throws IOException {
+        ImageDecodeEvent event = new ImageDecodeEvent();
+        event.begin();
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            if (in == null) {
+                throw new IOException("Cannot open image: " + file);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+                double scale = Math.max((double) width / maxWidth, (double) height / maxHeight);
+                int factor = Math.max(1, (int) Math.floor(scale / 2));
+
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(factor, factor, 0, 0);
+                BufferedImage image = reader.read(0, param);
+                if (event.shouldCommit()) {
+                    event.path = file.getPath();
+                    event.format = reader.getFormatName();
+                    event.fileBytes = file.length();
+                    event.sourceWidth = width;
+                    event.sourceHeight = height;
+                    event.subsampling = factor;
+                    event.decodedWidth = image.getWidth();
+                    event.decodedHeight = image.getHeight();
+                    event.commit();
+                }
+                return image;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
 
+    // Downscaling by more than 2x is done in halving steps: a single bilinear pass only samples
+    // four source pixels per output pixel and skips the rest, which aliases fine texture
+    public static BufferedImage resizeToFit(BufferedImage original, int maxWidth, int maxHeight) {
+        ImageResizeEvent event = new ImageResizeEvent();
+        event.begin();
         int originalWidth = original.getWidth();
         int originalHeight = original.getHeight();
         double widthRatio = (double) maxWidth / originalWidth;
         double heightRatio = (double) maxHeight / originalHeight;
         double ratio = Math.min(widthRatio, heightRatio);
 
-        int newWidth = (int)(originalWidth * ratio);
-        int newHeight = (int)(originalHeight * ratio);
+        int newWidth = Math.max(1, (int)(originalWidth * ratio));
+        int newHeight = Math.max(1, (int)(originalHeight * ratio));
 
-        BufferedImage resized = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
-        Graphics2D g = resized.createGraphics();
-        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
-        g.drawImage(original, 0, 0, newWidth, newHeight, null);
-        g.dispose();
+        BufferedImage source = original;
+        int step = 0;
+        int sourceWidth = originalWidth;
+        int sourceHeight = originalHeight;
+        if (sourceWidth > newWidth * 2 || sourceHeight > newHeight * 2) {
+            // Steps ping-pong between two buffers sized for the first step, each drawn into the top-left corner
+            BufferedImage[] scratch = scratchBuffers((sourceWidth + 1) / 2, (sourceHeight + 1) / 2);
+            while (sourceWidth > newWidth * 2 || sourceHeight > newHeight * 2) {
+                int stepWidth = Math.max(newWidth, (sourceWidth + 1) / 2);
+                int stepHeight = Math.max(newHeight, (sourceHeight + 1) / 2);
+                BufferedImage target = scratch[step++ % 2];
+                draw(source, sourceWidth, sourceHeight, target, stepWidth, stepHeight);
+                source = target;
+                sourceWidth = stepWidth;
+                sourceHeight = stepHeight;
+            }
+        }
 
+        BufferedImage resized = new BufferedImage(newWidth, newHeight, BufferedImage.TYPE_INT_RGB);
+        draw(source, sourceWidth, sourceHeight, resized, newWidth, newHeight);
+        if (event.shouldCommit()) {
+            event.sourceWidth = originalWidth;
+            event.sourceHeight = originalHeight;
+            event.width = newWidth;
+            event.height = newHeight;
+            event.halvingSteps = step;
+            event.commit();
+        }
         return resized;
     }
+
+    // Scales the top-left sourceWidth x sourceHeight of source onto the top-left of target
+    private static void draw(BufferedImage source, int sourceWidth, int sourceHeight,
+            BufferedImage target, int width, int height) {
+        Graphics2D g = target.createGraphics();
+        try {
+            // Scratch buffers hold the previous image; clear so transparent pixels come out black as before
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, width, height);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, width, height, 0, 0, sourceWidth, sourceHeight, null);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static BufferedImage[] scratchBuffers(int width, int height) {
+        SoftReference<BufferedImage[]> ref = SCRATCH.get();
+        BufferedImage[] buffers = ref != null ? ref.get() : null;
+        if (buffers == null || buffers[0].getWidth() < width || buffers[0].getHeight() < height) {
+            if (buffers != null) {
+                width = Math.max(width, buffers[0].getWidth());
+                height = Math.max(height, buffers[0].getHeight());
+            }
+            buffers = new BufferedImage[] {
+                new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB),
+                new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB)
+            };
+            SCRATCH.set(new SoftReference<>(buffers));
+        }
+        return buffers;
+    }
+
+    // Quality ranges from 0.0 (smallest) to 1.0 (best); the image must not have an alpha channel
+    public static byte[] encodeJpeg(BufferedImage image, float quality) throws IOException {
+        ImageEncodeEvent event = new ImageEncodeEvent();
+        event.begin();
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("No JPEG writer available");
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        byte[] encoded = out.toByteArray();
+        if (event.shouldCommit()) {
+            event.width = image.getWidth();
+            event.height = image.getHeight();
+            event.quality = quality;
+            event.encodedBytes = encoded.length;
+            event.commit();
+        }
+        return encoded;
+    }
 }
@@ -0,0 +1,208 @@
+package com.healthcare.skindetector.utils;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+// Small JPEG thumbnails of diagnosis images, decoded in the background with source subsampling.
+// The in-memory LRU is keyed by path alone, so painting a cell never touches the file, which may
+// be on a network share. The disk directory is keyed by path, modification time and size, worked
+// out on the decoder thread, so an edited or replaced image gets a fresh thumbnail next session.
+public class ThumbnailCache {
+
+    private static final String SUFFIX = ".jpg";
+
+    private static ThumbnailCache instance;
+
+    private final int size;
+    private final DiskLruDirectory disk;
+    private final long retryMillis;
+    private final Map<String, BufferedImage> memory;
+    // When each missing or unreadable image last failed, so it is not decoded on every repaint but
+    // is tried again once a brief share outage is over. Guarded by memory.
+    private final Map<String, Long> failures;
+    private final Map<String, CompletableFuture<BufferedImage>> inFlight = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor decoder;
+
+    public ThumbnailCache(int size, Path directory, long maxDiskBytes, int memoryEntries, int threads,
+            long retryMillis) {
+        this.size = size;
+        this.retryMillis = retryMillis;
+        this.memory = new LinkedHashMap<String, BufferedImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, BufferedImage> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+        this.failures = new LinkedHashMap<String, Long>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > memoryEntries;
+            }
+        };
+        // Rows scrolled past quickly can pile up requests; when the queue is full the oldest one is
+        // dropped and will simply be requested again if its row is painted again
+        this.decoder = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(256), runnable -> {
+                    Thread thread = new Thread(runnable, "thumbnail-decoder");
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }, (task, executor) -> {
+                    Runnable oldest = executor.getQueue().poll();
+                    if (oldest instanceof DecodeTask) {
+                        ((DecodeTask) oldest).abandon();
+                    }
+                    if (!executor.isShutdown()) {
+                        executor.execute(task);
+                    }
+                });
+        this.decoder.allowCoreThreadTimeOut(true);
+        this.disk = DiskLruDirectory.open(directory, SUFFIX, maxDiskBytes, "Thumbnail cache");
+    }
+
+    public static synchronized ThumbnailCache getInstance() {
+        if (instance == null) {
+            String defaultDir = Paths.get(System.getProperty("user.home"), ".mediscan", "thumbnails").toString();
+            instance = new ThumbnailCache(
+                    AppConfig.getInt("thumbnails.size", 64),
+                    Paths.get(AppConfig.getString("thumbnails.dir", defaultDir)),
+                    AppConfig.getLong("thumbnails.maxDiskBytes", 32L * 1024 * 1024),
+                    AppConfig.getInt("thumbnails.memoryEntries", 500),
+                    AppConfig.getInt("thumbnails.threads", 2),
+                    TimeUnit.SECONDS.toMillis(AppConfig.getLong("thumbnails.retrySeconds", 30L)));
+        }
+        return instance;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    // Returns the thumbnail if it is in memory, starting a background load otherwise. The callback
+    // runs on the decoder thread once a newly loaded thumbnail is available. Does no file I/O, so
+    // it is safe to call while painting.
+    public BufferedImage getOrLoad(String imagePath, Runnable onLoaded) {
+        synchronized (memory) {
+            BufferedImage cached = memory.get(imagePath);
+            if (cached != null) {
+                return cached;
+            }
+            if (failedRecently(imagePath)) {
+                return null;
+            }
+        }
+        load(imagePath).thenRun(onLoaded);
+        return null;
+    }
+
+    public boolean isUnavailable(String imagePath) {
+        synchronized (memory) {
+            return failedRecently(imagePath);
+        }
+    }
+
+    private boolean failedRecently(String imagePath) {
+        Long failedAt = failures.get(imagePath);
+        return failedAt != null && System.currentTimeMillis() - failedAt < retryMillis;
+    }
+
+    private CompletableFuture<BufferedImage> load(String imagePath) {
+        CompletableFuture<BufferedImage> future = new CompletableFuture<>();
+        CompletableFuture<BufferedImage> existing = inFlight.putIfAbsent(imagePath, future);
+        if (existing != null) {
+            return existing;
+        }
+        decoder.execute(new DecodeTask(imagePath, future));
+        return future;
+    }
+
+    private final class DecodeTask implements Runnable {
+        private final String imagePath;
+        private final CompletableFuture<BufferedImage> future;
+
+        DecodeTask(String imagePath, CompletableFuture<BufferedImage> future) {
+            this.imagePath = imagePath;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            BufferedImage thumbnail = null;
+            try {
+                thumbnail = loadThumbnail(new File(imagePath));
+            } catch (IOException | RuntimeException e) {
+                System.err.println("No thumbnail for " + imagePath + ": " + e.getMessage());
+            } finally {
+                synchronized (memory) {
+                    if (thumbnail != null) {
+                        memory.put(imagePath, thumbnail);
+                        failures.remove(imagePath);
+                    } else {
+                        failures.put(imagePath, System.currentTimeMillis());
+                    }
+                }
+                inFlight.remove(imagePath);
+                future.complete(thumbnail);
+            }
+        }
+
+        // Dropped from the queue before running; nothing is cached, so the next request retries
+        void abandon() {
+            inFlight.remove(imagePath);
+            future.cancel(false);
+        }
+    }
+
+    private BufferedImage loadThumbnail(File imageFile) throws IOException {
+        String key = disk != null ? diskKey(imageFile) : null;
+        if (key != null) {
+            byte[] content = disk.read(key);
+            BufferedImage thumbnail = content != null ? ImageIO.read(new ByteArrayInputStream(content)) : null;
+            if (thumbnail != null) {
+                disk.touch(key);
+                return thumbnail;
+            }
+        }
+
+        BufferedImage subsampled = ImageUtils.readSubsampled(imageFile, size, size);
+        if (subsampled == null) {
+            throw new IOException("Unsupported image format");
+        }
+        BufferedImage thumbnail = ImageUtils.resizeToFit(subsampled, size, size);
+        if (key != null) {
+            try {
+                disk.write(key, ImageUtils.encodeJpeg(thumbnail, 0.85f));
+            } catch (IOException e) {
+                System.err.println("Could not store thumbnail: " + e.getMessage());
+            }
+        }
+        return thumbnail;
+    }
+
+    // Path plus modification time and length; unreadable files get a key of their own and are retried later
+    private String diskKey(File file) {
+        String identity = file.getAbsolutePath() + '\0' + file.lastModified() + '\0' + file.length() + '\0' + size;
+        try {
+            return DiskLruDirectory.toHex(
+                    MessageDigest.getInstance("SHA-256").digest(identity.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.healthcare.skindetector.vertexai;
+
+// Stops calls to an endpoint that keeps failing. Once at least failureRatio of the last windowSize
+// calls failed, the breaker opens and calls are refused for openMillis; then a single probe call
+// is let through, and its outcome closes the breaker again or re-opens it for another openMillis.
+final class CircuitBreaker {
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private final double failureRatio;
+    private final long openNanos;
+
+    // Outcomes of the most recent calls while closed, as a ring buffer
+    private final boolean[] outcomes;
+    private int next;
+    private int recorded;
+    private int failures;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private boolean probeInFlight;
+
+    // A windowSize of 0 never opens the breaker
+    CircuitBreaker(String name, int windowSize, double failureRatio, long openMillis) {
+        this.name = name;
+        this.outcomes = new boolean[Math.max(0, windowSize)];
+        this.failureRatio = failureRatio;
+        this.openNanos = openMillis * 1_000_000L;
+    }
+
+    // Whether a call may be sent now; every call that was allowed must end in exactly one of
+    // onSuccess, onFailure or onAbandoned
+    synchronized boolean tryAcquire() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (probeInFlight) {
+            return false;
+        }
+        probeInFlight = true;
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        probeInFlight = false;
+        if (state == State.CLOSED) {
+            record(false);
+        } else {
+            state = State.CLOSED;
+            clear();
+            System.out.println("Circuit breaker for " + name + " closed; endpoint is answering again");
+        }
+    }
+
+    synchronized void onFailure() {
+        probeInFlight = false;
+        if (state == State.CLOSED) {
+            record(true);
+            if (outcomes.length > 0 && recorded == outcomes.length && failures >= failureRatio * outcomes.length) {
+                open("after " + failures + " of the last " + recorded + " calls failed");
+            }
+        } else if (state == State.HALF_OPEN) {
+            open("again after a failed probe");
+        }
+    }
+
+    // The call was cancelled or lost a hedging race, so it says nothing about the endpoint
+    synchronized void onAbandoned() {
+        probeInFlight = false;
+    }
+
+    private void record(boolean failed) {
+        if (outcomes.length == 0) {
+            return;
+        }
+        if (recorded == outcomes.length) {
+            failures -= outcomes[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failed;
+        failures += failed ? 1 : 0;
+        next = (next + 1) % outcomes.length;
+    }
+
+    private void clear() {
+        next = 0;
+        recorded = 0;
+        failures = 0;
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+        System.err.println("Circuit breaker for " + name + " opened " + reason + "; refusing calls for "
+                + openNanos / 1_000_000L + " ms");
+    }
+}
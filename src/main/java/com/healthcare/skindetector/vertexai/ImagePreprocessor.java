@@ -0,0 +1,107 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.healthcare.skindetector.utils.AppConfig;
+import com.healthcare.skindetector.utils.ImageUtils;
+
+// Shrinks images to the model input size and re-encodes them as JPEG before upload.
+// The original bytes are sent unchanged when they cannot be decoded (unsupported, corrupt or
+// truncated) or are already smaller. Re-encoding drops all metadata, including the EXIF
+// orientation tag: pixels keep the orientation the camera stored them in, which is also what the
+// model gets from an original, as decoders such as TensorFlow's decode_jpeg ignore the tag.
+public class ImagePreprocessor {
+
+    private final boolean enabled;
+    private final int inputSize;
+    private final float jpegQuality;
+
+    private final AtomicLong originalBytesTotal = new AtomicLong();
+    private final AtomicLong uploadedBytesTotal = new AtomicLong();
+
+    public ImagePreprocessor(boolean enabled, int inputSize, float jpegQuality) {
+        this.enabled = enabled;
+        this.inputSize = inputSize;
+        this.jpegQuality = jpegQuality;
+    }
+
+    public static ImagePreprocessor fromConfig() {
+        return new ImagePreprocessor(
+                AppConfig.getBoolean("vertex.preprocess.enabled", true),
+                AppConfig.getInt("vertex.preprocess.inputSize", 512),
+                (float) AppConfig.getDouble("vertex.preprocess.jpegQuality", 0.9));
+    }
+
+    public PreparedImage prepare(Path imageFile) throws IOException {
+        long originalLength = Files.size(imageFile);
+        byte[] downscaled = enabled ? downscale(imageFile, originalLength) : null;
+        PreparedImage prepared = new PreparedImage(downscaled, originalLength);
+
+        originalBytesTotal.addAndGet(prepared.getOriginalLength());
+        uploadedBytesTotal.addAndGet(prepared.getUploadLength());
+        return prepared;
+    }
+
+    // Returns null when the original file should be uploaded as is
+    private byte[] downscale(Path imageFile, long originalLength) throws IOException {
+        BufferedImage original;
+        try {
+            original = ImageUtils.readSubsampled(imageFile.toFile(), inputSize, inputSize);
+        } catch (IOException | RuntimeException e) {
+            // ImageIO reports corrupt data as either; the model may still cope with what it can read
+            System.err.println("Uploading " + imageFile + " unchanged, could not decode it: " + e.getMessage());
+            return null;
+        }
+        if (original == null) {
+            return null;
+        }
+
+        // Never upscale; images that already fit are still re-encoded to drop metadata and alpha
+        int maxWidth = Math.min(inputSize, original.getWidth());
+        int maxHeight = Math.min(inputSize, original.getHeight());
+        BufferedImage resized = ImageUtils.resizeToFit(original, maxWidth, maxHeight);
+        byte[] encoded = ImageUtils.encodeJpeg(resized, jpegQuality);
+
+        return encoded.length < originalLength ? encoded : null;
+    }
+
+    // Parameters that change the uploaded bytes, so cached predictions are keyed on them too
+    public String describe() {
+        return enabled ? "jpeg:" + inputSize + ":" + jpegQuality : "original";
+    }
+
+    public long getBytesSavedTotal() {
+        return originalBytesTotal.get() - uploadedBytesTotal.get();
+    }
+
+    public static final class PreparedImage {
+        private final byte[] bytes;
+        private final long originalLength;
+
+        PreparedImage(byte[] bytes, long originalLength) {
+            this.bytes = bytes;
+            this.originalLength = originalLength;
+        }
+
+        public boolean isOriginal() {
+            return bytes == null;
+        }
+
+        // Re-encoded image, or null when isOriginal()
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public long getOriginalLength() {
+            return originalLength;
+        }
+
+        public long getUploadLength() {
+            return bytes != null ? bytes.length : originalLength;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.healthcare.skindetector.vertexai;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.healthcare.skindetector.InstanceEncode")
+@Label("Instance Encode")
+@Description("Base64 encoding of an image into a prediction instance")
+@Category({"MediScan", "Prediction"})
+@StackTrace(false)
+final class InstanceEncodeEvent extends Event {
+
+    @Label("Source")
+    @Description("file when streamed from disk, memory when preprocessed bytes were encoded")
+    String source;
+
+    @Label("Original Size")
+    @Description("Size of the image file before preprocessing")
+    @DataAmount
+    long originalBytes;
+
+    @Label("Upload Size")
+    @Description("Size of the image that was encoded; smaller than the original when preprocessing shrank it")
+    @DataAmount
+    long uploadBytes;
+
+    @Label("Encoded Size")
+    @DataAmount
+    long encodedBytes;
+}
@@ -0,0 +1,109 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Struct;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.Value;
+
+// Builds {"content": "<base64>"} prediction instances with a single image-sized allocation:
+// the Base64 text is written straight into an exactly sized array that the protobuf Value
+// wraps without copying, instead of going through an intermediate String.
+final class InstanceEncoder {
+
+    private static final int MAX_ENCODED_LENGTH = Integer.MAX_VALUE - 8;
+
+    private InstanceEncoder() {}
+
+    static Value encode(byte[] imageBytes) {
+        return encode(imageBytes, imageBytes.length);
+    }
+
+    // originalLength is the size of the file the bytes were preprocessed from, for the JFR event
+    static Value encode(byte[] imageBytes, long originalLength) {
+        InstanceEncodeEvent event = new InstanceEncodeEvent();
+        event.begin();
+        byte[] encoded = Base64.getEncoder().encode(imageBytes);
+        commit(event, "memory", originalLength, imageBytes.length, encoded.length);
+        return instance(encoded);
+    }
+
+    // Streams the file through the encoder in small chunks; the raw bytes are never fully buffered
+    static Value encode(Path imageFile) throws IOException {
+        InstanceEncodeEvent event = new InstanceEncodeEvent();
+        event.begin();
+        long imageLength = Files.size(imageFile);
+        long encodedLength = encodedLength(imageLength);
+        if (encodedLength > MAX_ENCODED_LENGTH) {
+            throw new IOException("Image too large to upload: " + imageFile);
+        }
+
+        byte[] encoded = new byte[(int) encodedLength];
+        FixedArrayOutputStream sink = new FixedArrayOutputStream(encoded);
+        try (OutputStream base64 = Base64.getEncoder().wrap(sink)) {
+            Files.copy(imageFile, base64);
+        }
+        if (sink.position != encoded.length) {
+            throw new IOException("Image changed while it was being read: " + imageFile);
+        }
+        commit(event, "file", imageLength, imageLength, encoded.length);
+        return instance(encoded);
+    }
+
+    static long encodedLength(long rawLength) {
+        return 4 * ((rawLength + 2) / 3);
+    }
+
+    private static void commit(InstanceEncodeEvent event, String source, long originalBytes, long uploadBytes,
+            long encodedBytes) {
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.originalBytes = originalBytes;
+            event.uploadBytes = uploadBytes;
+            event.encodedBytes = encodedBytes;
+            event.commit();
+        }
+    }
+
+    private static Value instance(byte[] encoded) {
+        // Safe to wrap: the array is never touched again after this point
+        ByteString content = UnsafeByteOperations.unsafeWrap(encoded);
+        return Value.newBuilder()
+                .setStructValue(Struct.newBuilder()
+                        .putFields("content", Value.newBuilder().setStringValueBytes(content).build()))
+                .build();
+    }
+
+    private static final class FixedArrayOutputStream extends OutputStream {
+        private final byte[] target;
+        private int position;
+
+        FixedArrayOutputStream(byte[] target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            ensureCapacity(1);
+            target[position++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureCapacity(len);
+            System.arraycopy(b, off, target, position, len);
+            position += len;
+        }
+
+        private void ensureCapacity(int len) throws IOException {
+            if (len > target.length - position) {
+                throw new IOException("Image grew while it was being read");
+            }
+        }
+    }
+}
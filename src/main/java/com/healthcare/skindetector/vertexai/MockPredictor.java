@@ -0,0 +1,102 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+import com.healthcare.skindetector.models.PredictionResult;
+import com.healthcare.skindetector.utils.AppConfig;
+
+// Answers immediately with labels derived from a checksum of the image file: the same image always
+// gets the same result and nothing leaves the process. For tests and demos, never for patients.
+public class MockPredictor implements Predictor {
+
+    private static final String ENDPOINT = "mock";
+    private static final int LABEL_COUNT = 3;
+
+    private final int maxBatchInstances = AppConfig.getInt("vertex.batch.maxInstances", 10);
+
+    @Override
+    public PredictionResult predictSkinDisease(File imageFile) throws IOException {
+        long start = System.nanoTime();
+        int hash = checksum(imageFile);
+        String[] labels = new String[LABEL_COUNT];
+        float[] confidences = new float[LABEL_COUNT];
+        for (int i = 0; i < LABEL_COUNT; i++) {
+            labels[i] = StandInPredictionService.label(hash, i);
+            confidences[i] = (float) StandInPredictionService.confidence(hash, i);
+        }
+        return new PredictionResult(labels, confidences, ENDPOINT, System.nanoTime() - start, LocalDateTime.now(),
+                false, null);
+    }
+
+    @Override
+    public CompletableFuture<PredictionResult> predictSkinDiseaseAsync(File imageFile) {
+        try {
+            return CompletableFuture.completedFuture(predictSkinDisease(imageFile));
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<PredictionResult> predictSkinDiseaseAsync(File imageFile, Duration deadline) {
+        return predictSkinDiseaseAsync(imageFile);
+    }
+
+    @Override
+    public List<PredictionResult> predictBatch(List<File> imageFiles) throws IOException {
+        List<PredictionResult> results = new ArrayList<>(imageFiles.size());
+        for (File imageFile : imageFiles) {
+            results.add(predictSkinDisease(imageFile));
+        }
+        return results;
+    }
+
+    @Override
+    public PreparedInstance prepare(File imageFile) {
+        return new PreparedInstance(imageFile, null, null, null);
+    }
+
+    @Override
+    public List<PredictionResult> predictPrepared(List<PreparedInstance> prepared) {
+        List<PredictionResult> results = new ArrayList<>(prepared.size());
+        for (PreparedInstance instance : prepared) {
+            try {
+                results.add(predictSkinDisease(instance.getFile()));
+            } catch (IOException e) {
+                throw new RuntimeException("Could not read " + instance.getFile() + ": " + e.getMessage(), e);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public int getMaxBatchInstances() {
+        return maxBatchInstances;
+    }
+
+    @Override
+    public void close() {
+        // Nothing to release
+    }
+
+    private static int checksum(File imageFile) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(imageFile.toPath())) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+        }
+        return (int) crc.getValue() & Integer.MAX_VALUE;
+    }
+}
@@ -0,0 +1,237 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.healthcare.skindetector.models.PredictionResult;
+import com.healthcare.skindetector.utils.AppConfig;
+import com.healthcare.skindetector.utils.DiskLruDirectory;
+
+// Two-tier cache of prediction results keyed by image content and request parameters.
+// The memory tier is an LRU map; the disk tier keeps one file per key and survives restarts.
+public class PredictionCache {
+
+    private static final String SUFFIX = ".prediction";
+    private static final int FORMAT_VERSION = 2;
+
+    private final int maxMemoryEntries;
+    private final DiskLruDirectory disk;
+    private final long ttlMillis;
+
+    private final Map<String, CachedPrediction> memory;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public PredictionCache(int maxMemoryEntries, Path directory, long maxDiskBytes, Duration ttl) {
+        this.maxMemoryEntries = maxMemoryEntries;
+        this.ttlMillis = ttl.toMillis();
+        this.memory = new LinkedHashMap<String, CachedPrediction>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedPrediction> eldest) {
+                return size() > PredictionCache.this.maxMemoryEntries;
+            }
+        };
+        this.disk = DiskLruDirectory.open(directory, SUFFIX, maxDiskBytes, "Prediction cache");
+    }
+
+    public static PredictionCache fromConfig() {
+        String defaultDir = Paths.get(System.getProperty("user.home"), ".mediscan", "prediction-cache").toString();
+        return new PredictionCache(
+                AppConfig.getInt("vertex.cache.memoryEntries", 256),
+                Paths.get(AppConfig.getString("vertex.cache.dir", defaultDir)),
+                AppConfig.getLong("vertex.cache.maxDiskBytes", 64L * 1024 * 1024),
+                Duration.ofHours(AppConfig.getLong("vertex.cache.ttlHours", 24L * 30)));
+    }
+
+    // SHA-256 over the image bytes followed by every parameter that influences the prediction
+    public static String key(byte[] imageBytes, Object... parameters) {
+        MessageDigest digest = newDigest();
+        digest.update(imageBytes);
+        return finishKey(digest, parameters);
+    }
+
+    // Same key as key(byte[], ...) but hashes the file in chunks instead of loading it
+    public static String key(Path imageFile, Object... parameters) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        try (InputStream in = Files.newInputStream(imageFile)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return finishKey(digest, parameters);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String finishKey(MessageDigest digest, Object... parameters) {
+        for (Object parameter : parameters) {
+            digest.update((byte) 0);
+            digest.update(String.valueOf(parameter).getBytes(StandardCharsets.UTF_8));
+        }
+        return DiskLruDirectory.toHex(digest.digest());
+    }
+
+    public PredictionResult get(String key) {
+        long now = System.currentTimeMillis();
+        synchronized (memory) {
+            CachedPrediction entry = memory.get(key);
+            if (entry != null) {
+                if (now - entry.createdAt < ttlMillis) {
+                    memoryHits.incrementAndGet();
+                    return entry.value.asCached();
+                }
+                memory.remove(key);
+            }
+        }
+
+        CachedPrediction entry = readFromDisk(key, now);
+        if (entry != null) {
+            diskHits.incrementAndGet();
+            synchronized (memory) {
+                memory.put(key, entry);
+            }
+            return entry.value.asCached();
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(String key, PredictionResult value) {
+        CachedPrediction entry = new CachedPrediction(value, System.currentTimeMillis());
+        synchronized (memory) {
+            memory.put(key, entry);
+        }
+        writeToDisk(key, entry);
+    }
+
+    public long getHits() {
+        return memoryHits.get() + diskHits.get();
+    }
+
+    public long getMemoryHits() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHits() {
+        return diskHits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public String getStats() {
+        return String.format("hits=%d (memory=%d, disk=%d) misses=%d",
+                getHits(), getMemoryHits(), getDiskHits(), getMisses());
+    }
+
+    private CachedPrediction readFromDisk(String key, long now) {
+        if (disk == null) {
+            return null;
+        }
+        try {
+            byte[] content = disk.read(key);
+            if (content == null) {
+                return null;
+            }
+            CachedPrediction entry;
+            try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+                entry = readEntry(in);
+            }
+            if (now - entry.createdAt >= ttlMillis) {
+                disk.delete(key);
+                return null;
+            }
+            disk.touch(key);
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Discarding unreadable prediction cache entry " + key + ": " + e.getMessage());
+            disk.delete(key);
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, CachedPrediction entry) {
+        if (disk == null) {
+            return;
+        }
+        try {
+            disk.write(key, writeEntry(entry));
+        } catch (IOException e) {
+            System.err.println("Could not write prediction cache entry: " + e.getMessage());
+        }
+    }
+
+    private static byte[] writeEntry(CachedPrediction entry) throws IOException {
+        PredictionResult result = entry.value;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(entry.createdAt);
+            out.writeUTF(result.getEndpoint());
+            out.writeUTF(result.getAnalysisTime().toString());
+            out.writeLong(result.getLatencyNanos());
+            out.writeInt(result.getLabelCount());
+            for (int i = 0; i < result.getLabelCount(); i++) {
+                out.writeUTF(result.getLabel(i));
+                out.writeFloat(result.getConfidence(i));
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static CachedPrediction readEntry(DataInputStream in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            throw new IOException("unsupported cache entry format");
+        }
+        long createdAt = in.readLong();
+        String endpoint = in.readUTF();
+        LocalDateTime analysisTime = LocalDateTime.parse(in.readUTF());
+        long latencyNanos = in.readLong();
+        int count = in.readInt();
+        String[] labels = new String[count];
+        float[] confidences = new float[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = in.readUTF();
+            confidences[i] = in.readFloat();
+        }
+        return new CachedPrediction(
+                new PredictionResult(labels, confidences, endpoint, latencyNanos, analysisTime, false, null), createdAt);
+    }
+
+    private static final class CachedPrediction {
+        final PredictionResult value;
+        final long createdAt;
+
+        CachedPrediction(PredictionResult value, long createdAt) {
+            this.value = value;
+            this.createdAt = createdAt;
+        }
+    }
+}
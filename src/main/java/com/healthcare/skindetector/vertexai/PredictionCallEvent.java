@@ -0,0 +1,56 @@
+package com.healthcare.skindetector.vertexai;
+
+import com.healthcare.skindetector.metrics.OperationTimer;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("com.healthcare.skindetector.PredictionCall")
+@Label("Prediction Call")
+@Description("One prediction against the endpoint, from sending the request to parsing the response, including retries and hedged copies")
+@Category({"MediScan", "Prediction"})
+@StackTrace(false)
+final class PredictionCallEvent extends Event {
+
+    @Label("Endpoint")
+    String endpoint;
+
+    @Label("Asynchronous")
+    boolean async;
+
+    @Label("Deadline")
+    @Timespan(Timespan.MILLISECONDS)
+    long deadlineMillis;
+
+    @Label("Instances")
+    int instances;
+
+    @Label("Request Size")
+    @DataAmount
+    long requestBytes;
+
+    @Label("Predictions")
+    int predictions;
+
+    @Label("Attempts")
+    @Description("Attempts sent, not counting hedged copies")
+    int attempts;
+
+    @Label("Hedges")
+    @Description("Extra copies sent because an attempt was slower than usual")
+    int hedges;
+
+    @Label("Error")
+    @Description("Exception of a failed call; not set when it succeeded")
+    String error;
+
+    // Not part of the recorded event: the metrics timer this call is reported to, and its start
+    transient OperationTimer timer;
+    transient long startNanos;
+}
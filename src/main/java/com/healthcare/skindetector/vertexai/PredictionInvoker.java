@@ -0,0 +1,415 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.grpc.GrpcCallContext;
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.ApiException;
+import com.google.api.gax.rpc.DeadlineExceededException;
+import com.google.api.gax.rpc.InvalidArgumentException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.api.gax.rpc.UnaryCallable;
+import com.google.cloud.aiplatform.v1.EndpointName;
+import com.google.cloud.aiplatform.v1.PredictRequest;
+import com.google.cloud.aiplatform.v1.PredictResponse;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.healthcare.skindetector.metrics.LatencyHistogram;
+import com.healthcare.skindetector.metrics.MetricsRegistry;
+import com.healthcare.skindetector.metrics.OperationTimer;
+import com.healthcare.skindetector.utils.AppConfig;
+
+import io.grpc.CallOptions;
+import io.grpc.Status;
+
+// Sends Predict calls to one endpoint within a deadline budget that covers every attempt:
+//  - each attempt gets at most vertex.retry.attemptTimeoutMillis of what is left of the budget
+//  - an attempt failing with one of vertex.retry.codes is retried after a full-jitter exponential
+//    backoff, up to vertex.retry.maxAttempts and only while the backoff still fits in the budget
+//  - with vertex.hedge.enabled, an attempt that has not answered within the vertex.hedge.percentile
+//    latency of recent calls gets a second copy and whichever answers first wins; Predict has no
+//    side effects, so the loser is simply cancelled
+//  - a CircuitBreaker refuses calls while the endpoint keeps failing; it judges whole calls, after
+//    their retries, so errors that a retry absorbs do not count against the endpoint
+// The gax client's own retry settings are left off, so this is the only place calls are repeated.
+// Requests are compressed with vertex.grpc.compression; base64 image content shrinks by about a
+// quarter, which matters more than the CPU it costs when uploads dominate the call.
+// Calls in flight and a latency average are kept for PredictionRouter to choose between endpoints.
+final class PredictionInvoker {
+
+    // A hedge delay needs this many answers in the window before it is trusted
+    private static final int MIN_HEDGE_SAMPLES = 20;
+    private static final long HEDGE_DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final String name;
+    private final UnaryCallable<PredictRequest, PredictResponse> callable;
+    private final ScheduledExecutorService scheduler;
+    private final CircuitBreaker breaker;
+    private final OperationTimer attemptTimer = MetricsRegistry.getInstance().timer("prediction", "attempt");
+    private final OperationTimer endpointTimer;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final int maxOutboundMessageBytes = AppConfig.getInt("vertex.grpc.maxOutboundMessageBytes", 10 * 1024 * 1024);
+    private final CallOptions callOptions = callOptions(
+            AppConfig.getString("vertex.grpc.compression", "gzip").trim(), maxOutboundMessageBytes);
+
+    private final int maxAttempts = Math.max(1, AppConfig.getInt("vertex.retry.maxAttempts", 3));
+    private final long attemptTimeoutNanos =
+            TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("vertex.retry.attemptTimeoutMillis", 10_000L));
+    private final long initialBackoffNanos =
+            TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("vertex.retry.initialBackoffMillis", 100L));
+    private final long maxBackoffNanos =
+            TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("vertex.retry.maxBackoffMillis", 2_000L));
+    private final Set<StatusCode.Code> retryableCodes =
+            parseCodes(AppConfig.getString("vertex.retry.codes", "UNAVAILABLE,RESOURCE_EXHAUSTED,DEADLINE_EXCEEDED,ABORTED"));
+
+    private final boolean hedgeEnabled = AppConfig.getBoolean("vertex.hedge.enabled", false);
+    private final double hedgePercentile = AppConfig.getDouble("vertex.hedge.percentile", 95.0);
+    private final long minHedgeDelayNanos =
+            TimeUnit.MILLISECONDS.toNanos(AppConfig.getLong("vertex.hedge.minDelayMillis", 50L));
+    private final long hedgeWindowNanos =
+            TimeUnit.SECONDS.toNanos(AppConfig.getLong("vertex.hedge.windowSeconds", 60L));
+
+    // Latency of successful attempts. The hedge delay is taken from the part recorded since
+    // olderBaseline, i.e. over the last one to two hedge windows.
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private LatencyHistogram.Snapshot olderBaseline = LatencyHistogram.Snapshot.empty();
+    private LatencyHistogram.Snapshot newerBaseline = LatencyHistogram.Snapshot.empty();
+    private long windowStartedAt = System.nanoTime();
+    private volatile long hedgeDelayNanos = -1;
+    private volatile long hedgeDelayUpdatedAt = System.nanoTime() - HEDGE_DELAY_REFRESH_NANOS;
+
+    // Call latency averaged over roughly the last vertex.routing.ewmaSeconds. Each answer is weighted
+    // by the time since the one before, so the average moves as fast at one call a minute as at
+    // fifty a second. Guarded by ewmaLock.
+    private final double ewmaWindowNanos = TimeUnit.SECONDS.toNanos(AppConfig.getLong("vertex.routing.ewmaSeconds", 10L));
+    private final Object ewmaLock = new Object();
+    private double latencyEwma;
+    private long latencyUpdatedAt;
+    private boolean latencyKnown;
+
+    PredictionInvoker(EndpointName endpointName, UnaryCallable<PredictRequest, PredictResponse> callable,
+            ScheduledExecutorService scheduler) {
+        this.name = endpointName.toString();
+        this.callable = callable;
+        this.scheduler = scheduler;
+        this.endpointTimer = MetricsRegistry.getInstance()
+                .timer("endpoint", endpointName.getLocation() + "/" + endpointName.getEndpoint());
+        this.breaker = new CircuitBreaker(name, AppConfig.getInt("vertex.breaker.windowSize", 20),
+                AppConfig.getDouble("vertex.breaker.failureRatio", 0.5),
+                AppConfig.getLong("vertex.breaker.openMillis", 10_000L));
+    }
+
+    // Null when the circuit breaker refuses the call. Otherwise completes with the first answer, or
+    // with the error of the last attempt once retries or the budget run out; cancelling it cancels
+    // every attempt still running. The event, if any, is given this endpoint and has the attempts
+    // and hedges of this call added before the future completes.
+    CompletableFuture<PredictResponse> tryCall(PredictRequest request, Duration budget, PredictionCallEvent event) {
+        // gRPC would refuse it with RESOURCE_EXHAUSTED, which is retried; no attempt can succeed
+        int size = request.getSerializedSize();
+        if (size > maxOutboundMessageBytes) {
+            CompletableFuture<PredictResponse> tooLarge = new CompletableFuture<>();
+            tooLarge.completeExceptionally(new InvalidArgumentException("Prediction request of " + size
+                    + " bytes exceeds vertex.grpc.maxOutboundMessageBytes (" + maxOutboundMessageBytes + ")",
+                    null, GrpcStatusCode.of(Status.Code.INVALID_ARGUMENT), false));
+            return tooLarge;
+        }
+        if (!breaker.tryAcquire()) {
+            return null;
+        }
+        PredictRequest addressed = request.getEndpoint().equals(name)
+                ? request
+                : request.toBuilder().setEndpoint(name).build();
+        if (event != null) {
+            event.endpoint = name;
+        }
+        Invocation invocation = new Invocation(addressed, budget, event);
+        long start = System.nanoTime();
+        outstanding.incrementAndGet();
+        invocation.result.whenComplete((response, error) -> {
+            outstanding.decrementAndGet();
+            long nanos = System.nanoTime() - start;
+            if (error == null) {
+                breaker.onSuccess();
+                recordLatency(nanos);
+            } else if (invocation.result.isCancelled()) {
+                breaker.onAbandoned();
+                return;
+            } else if (isEndpointFailure(error)) {
+                breaker.onFailure();
+                // Counted as slow as a timed-out attempt, so an endpoint that fails fast does not
+                // look like the fastest one
+                recordLatency(Math.max(nanos, attemptTimeoutNanos));
+            } else {
+                // The endpoint answered; the request itself was rejected
+                breaker.onSuccess();
+            }
+            endpointTimer.record(nanos, error == null);
+        });
+        invocation.attempt();
+        return invocation.result;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int getOutstanding() {
+        return outstanding.get();
+    }
+
+    // 0 until the first call ends. Decays toward 0 while the endpoint gets no answers, so one that was
+    // avoided for being slow is eventually tried again.
+    double latencyEstimateNanos(long now) {
+        synchronized (ewmaLock) {
+            return latencyKnown ? latencyEwma * Math.exp(-(now - latencyUpdatedAt) / ewmaWindowNanos) : 0;
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        long now = System.nanoTime();
+        synchronized (ewmaLock) {
+            double weight = latencyKnown ? Math.exp(-(now - latencyUpdatedAt) / ewmaWindowNanos) : 0;
+            latencyEwma = weight * latencyEwma + (1 - weight) * nanos;
+            latencyUpdatedAt = now;
+            latencyKnown = true;
+        }
+    }
+
+    private final class Invocation {
+        private final PredictRequest request;
+        private final Duration budget;
+        private final long deadline;
+        private final PredictionCallEvent event;
+        private final CompletableFuture<PredictResponse> result = new CompletableFuture<>();
+
+        // Guarded by this
+        private final List<ApiFuture<PredictResponse>> running = new ArrayList<>();
+        private ScheduledFuture<?> pending;
+        private int attempts;
+        private int hedges;
+
+        Invocation(PredictRequest request, Duration budget, PredictionCallEvent event) {
+            this.request = request;
+            this.budget = budget;
+            this.deadline = System.nanoTime() + budget.toNanos();
+            this.event = event;
+            // Once there is an answer, or the caller gave up, nothing else is needed
+            result.whenComplete((response, error) -> cancelRemaining());
+        }
+
+        synchronized void attempt() {
+            pending = null;
+            if (result.isDone()) {
+                return;
+            }
+            if (scheduler.isShutdown()) {
+                fail(new CancellationException("Predictor is closed"));
+                return;
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                fail(new DeadlineExceededException("Prediction deadline of " + budget.toMillis() + " ms used up",
+                        null, GrpcStatusCode.of(Status.Code.DEADLINE_EXCEEDED), false));
+                return;
+            }
+            attempts++;
+            startAttempt(remaining);
+
+            // The attempt may already have failed inline and scheduled a retry
+            long hedgeDelay = hedgeEnabled ? hedgeDelayNanos() : -1;
+            if (hedgeDelay >= 0 && hedgeDelay < remaining && !running.isEmpty() && !result.isDone()) {
+                pending = schedule(this::hedge, hedgeDelay);
+            }
+        }
+
+        synchronized void hedge() {
+            pending = null;
+            long remaining = deadline - System.nanoTime();
+            // A hedge that fires while close() runs must not start a call on a closing client
+            if (result.isDone() || running.isEmpty() || remaining <= 0 || scheduler.isShutdown()) {
+                return;
+            }
+            hedges++;
+            startAttempt(remaining);
+        }
+
+        private void startAttempt(long remaining) {
+            long start = System.nanoTime();
+            GrpcCallContext context = GrpcCallContext.createDefault()
+                    .withCallOptions(callOptions)
+                    .withTimeout(org.threeten.bp.Duration.ofNanos(Math.min(remaining, attemptTimeoutNanos)));
+            ApiFuture<PredictResponse> rpc = callable.futureCall(request, context);
+            running.add(rpc);
+            ApiFutures.addCallback(rpc, new ApiFutureCallback<PredictResponse>() {
+                @Override
+                public void onSuccess(PredictResponse response) {
+                    succeeded(rpc, response, System.nanoTime() - start);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    failed(rpc, t, System.nanoTime() - start);
+                }
+            }, MoreExecutors.directExecutor());
+        }
+
+        private synchronized void succeeded(ApiFuture<PredictResponse> rpc, PredictResponse response, long nanos) {
+            running.remove(rpc);
+            attemptTimer.record(nanos, true);
+            latencies.recordNanos(nanos);
+            if (!result.isDone()) {
+                recordAttempts();
+                result.complete(response);
+            }
+        }
+
+        private synchronized void failed(ApiFuture<PredictResponse> rpc, Throwable error, long nanos) {
+            running.remove(rpc);
+            if (result.isDone()) {
+                // Cancelled because the other copy answered first or the caller gave up
+                return;
+            }
+            attemptTimer.record(nanos, false);
+            if (!running.isEmpty()) {
+                // The other copy of this attempt may still answer
+                return;
+            }
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+            StatusCode.Code code = statusCode(error);
+            if (code != null && retryableCodes.contains(code) && attempts < maxAttempts) {
+                long backoff = backoffNanos(attempts);
+                if (System.nanoTime() + backoff < deadline) {
+                    pending = schedule(this::attempt, backoff);
+                    if (pending != null) {
+                        return;
+                    }
+                }
+            }
+            fail(error);
+        }
+
+        private void fail(Throwable error) {
+            recordAttempts();
+            result.completeExceptionally(error);
+        }
+
+        private void recordAttempts() {
+            if (event != null) {
+                event.attempts += attempts;
+                event.hedges += hedges;
+            }
+        }
+
+        private synchronized void cancelRemaining() {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+            // Cancelling runs the failure callback inline, which removes the call from the list
+            for (ApiFuture<PredictResponse> rpc : new ArrayList<>(running)) {
+                rpc.cancel(true);
+            }
+        }
+    }
+
+    // Null once the predictor is closed
+    private ScheduledFuture<?> schedule(Runnable task, long delayNanos) {
+        try {
+            return scheduler.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            return null;
+        }
+    }
+
+    // Full jitter: anywhere between zero and the exponential backoff, so clients that failed
+    // together do not all come back at the same moment
+    private long backoffNanos(int attempt) {
+        long cap = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt - 1, 20));
+        return cap > 0 ? ThreadLocalRandom.current().nextLong(cap + 1) : 0;
+    }
+
+    private static StatusCode.Code statusCode(Throwable error) {
+        return error instanceof ApiException ? ((ApiException) error).getStatusCode().getCode() : null;
+    }
+
+    // "identity" or an empty value sends requests uncompressed
+    private static CallOptions callOptions(String compression, int maxOutboundMessageBytes) {
+        CallOptions options = CallOptions.DEFAULT.withMaxOutboundMessageSize(maxOutboundMessageBytes);
+        return compression.isEmpty() || compression.equalsIgnoreCase("identity")
+                ? options
+                : options.withCompression(compression.toLowerCase(Locale.ROOT));
+    }
+
+    // Errors that say something is wrong with the endpoint rather than with the request. Anything
+    // that is not a gRPC status (e.g. a broken channel) counts as well.
+    static boolean isEndpointFailure(Throwable error) {
+        StatusCode.Code code = statusCode(error);
+        if (code == null) {
+            return true;
+        }
+        switch (code) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case RESOURCE_EXHAUSTED:
+            case INTERNAL:
+            case UNKNOWN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // -1 while there are too few recent answers to estimate the percentile
+    private long hedgeDelayNanos() {
+        long now = System.nanoTime();
+        if (now - hedgeDelayUpdatedAt >= HEDGE_DELAY_REFRESH_NANOS) {
+            updateHedgeDelay(now);
+        }
+        return hedgeDelayNanos;
+    }
+
+    private synchronized void updateHedgeDelay(long now) {
+        if (now - hedgeDelayUpdatedAt < HEDGE_DELAY_REFRESH_NANOS) {
+            return;
+        }
+        LatencyHistogram.Snapshot current = latencies.snapshot();
+        if (now - windowStartedAt >= hedgeWindowNanos) {
+            olderBaseline = newerBaseline;
+            newerBaseline = current;
+            windowStartedAt = now;
+        }
+        LatencyHistogram.Snapshot window = current.minus(olderBaseline);
+        hedgeDelayNanos = window.getCount() >= MIN_HEDGE_SAMPLES
+                ? Math.max(minHedgeDelayNanos, TimeUnit.MICROSECONDS.toNanos(window.percentileMicros(hedgePercentile)))
+                : -1;
+        hedgeDelayUpdatedAt = now;
+    }
+
+    private static Set<StatusCode.Code> parseCodes(String codes) {
+        Set<StatusCode.Code> parsed = EnumSet.noneOf(StatusCode.Code.class);
+        for (String code : codes.split(",")) {
+            if (!code.trim().isEmpty()) {
+                parsed.add(StatusCode.Code.valueOf(code.trim().toUpperCase(Locale.ROOT)));
+            }
+        }
+        return parsed;
+    }
+}
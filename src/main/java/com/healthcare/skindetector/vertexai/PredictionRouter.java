@@ -0,0 +1,156 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.google.api.gax.grpc.GrpcStatusCode;
+import com.google.api.gax.rpc.UnavailableException;
+import com.google.cloud.aiplatform.v1.PredictRequest;
+import com.google.cloud.aiplatform.v1.PredictResponse;
+import com.healthcare.skindetector.utils.AppConfig;
+
+import io.grpc.Status;
+
+// Spreads predictions over the endpoints in vertex.endpoints, choosing per call by
+// vertex.routing.policy:
+//   least-outstanding - the endpoint with the fewest calls in flight
+//   ewma              - the lowest average latency times (calls in flight + 1), so a slow region
+//                       gets less traffic and a busy one does not get all of it
+// Ties go to a random endpoint. An endpoint whose circuit breaker is open is skipped until its
+// breaker lets a probe through, and rejoins the rotation once the probe succeeds. A call that
+// still fails on its endpoint after that endpoint's retries moves on to the next best endpoint it
+// has not tried, within what is left of its deadline budget.
+final class PredictionRouter {
+
+    enum Policy { LEAST_OUTSTANDING, EWMA }
+
+    private final List<PredictionInvoker> endpoints;
+    private final Policy policy;
+
+    PredictionRouter(List<PredictionInvoker> endpoints) {
+        this.endpoints = new ArrayList<>(endpoints);
+        this.policy = Policy.valueOf(AppConfig.getString("vertex.routing.policy", "ewma")
+                .trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        if (this.endpoints.size() > 1) {
+            System.out.println("Routing predictions across " + this.endpoints.size() + " endpoints ("
+                    + policy.name().toLowerCase(Locale.ROOT).replace('_', '-') + ")");
+        }
+    }
+
+    // Fails with UNAVAILABLE, without sending anything, when every endpoint's breaker is open.
+    // Cancelling the returned future cancels the call on whichever endpoint it is at.
+    CompletableFuture<PredictResponse> call(PredictRequest request, Duration budget, PredictionCallEvent event) {
+        RoutedCall call = new RoutedCall(request, budget, event);
+        call.next(null);
+        return call.result;
+    }
+
+    private final class RoutedCall {
+        private final PredictRequest request;
+        private final long deadline;
+        private final PredictionCallEvent event;
+        private final CompletableFuture<PredictResponse> result = new CompletableFuture<>();
+        private final Set<PredictionInvoker> tried = new HashSet<>();
+        private volatile CompletableFuture<PredictResponse> current;
+
+        RoutedCall(PredictRequest request, Duration budget, PredictionCallEvent event) {
+            this.request = request;
+            this.deadline = System.nanoTime() + budget.toNanos();
+            this.event = event;
+            result.whenComplete((response, error) -> {
+                CompletableFuture<PredictResponse> running = current;
+                if (result.isCancelled() && running != null) {
+                    running.cancel(true);
+                }
+            });
+        }
+
+        // Runs on the thread that completed the previous endpoint's call, so one at a time
+        void next(Throwable lastError) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining > 0 && !result.isDone()) {
+                for (PredictionInvoker endpoint : ranked()) {
+                    if (tried.contains(endpoint)) {
+                        continue;
+                    }
+                    CompletableFuture<PredictResponse> call = endpoint.tryCall(request, Duration.ofNanos(remaining), event);
+                    if (call == null) {
+                        continue;
+                    }
+                    tried.add(endpoint);
+                    current = call;
+                    // Cancelled while the call was being started
+                    if (result.isCancelled()) {
+                        call.cancel(true);
+                    }
+                    call.whenComplete((response, error) -> {
+                        if (error == null) {
+                            result.complete(response);
+                        } else if (!call.isCancelled() && PredictionInvoker.isEndpointFailure(error)) {
+                            next(error);
+                        } else {
+                            result.completeExceptionally(error);
+                        }
+                    });
+                    return;
+                }
+            }
+            result.completeExceptionally(lastError != null ? lastError : new UnavailableException(
+                    endpoints.size() == 1
+                            ? "Circuit breaker open for " + endpoints.get(0).getName()
+                            : "Circuit breakers open for all " + endpoints.size() + " endpoints",
+                    null, GrpcStatusCode.of(Status.Code.UNAVAILABLE), false));
+        }
+    }
+
+    // Best first
+    private List<PredictionInvoker> ranked() {
+        if (endpoints.size() == 1) {
+            return endpoints;
+        }
+        // Scores are read once, as calls elsewhere keep changing them. Starting from a random
+        // rotation makes the stable sort break ties randomly.
+        int offset = ThreadLocalRandom.current().nextInt(endpoints.size());
+        long now = System.nanoTime();
+        List<Candidate> candidates = new ArrayList<>(endpoints.size());
+        for (int i = 0; i < endpoints.size(); i++) {
+            PredictionInvoker endpoint = endpoints.get((offset + i) % endpoints.size());
+            candidates.add(new Candidate(endpoint, score(endpoint, now)));
+        }
+        candidates.sort(Comparator.comparingDouble(candidate -> candidate.score));
+        List<PredictionInvoker> ranked = new ArrayList<>(candidates.size());
+        for (Candidate candidate : candidates) {
+            ranked.add(candidate.endpoint);
+        }
+        return ranked;
+    }
+
+    private double score(PredictionInvoker endpoint, long now) {
+        int outstanding = endpoint.getOutstanding();
+        switch (policy) {
+            case LEAST_OUTSTANDING:
+                return outstanding;
+            case EWMA:
+                return endpoint.latencyEstimateNanos(now) * (outstanding + 1);
+            default:
+                throw new IllegalStateException("Unknown routing policy " + policy);
+        }
+    }
+
+    private static final class Candidate {
+        final PredictionInvoker endpoint;
+        final double score;
+
+        Candidate(PredictionInvoker endpoint, double score) {
+            this.endpoint = endpoint;
+            this.score = score;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+
+import com.healthcare.skindetector.models.PredictionResult;
+import com.healthcare.skindetector.utils.AppConfig;
+
+// Skin image classifier behind the GUI, batch, ingest and server modes. fromConfig() picks the
+// implementation from predictor.backend:
+//   vertex  - the deployed Vertex AI endpoint(s) (default)
+//   standin - the same Vertex client against in-process StandInPredictionServices, so the whole
+//             gRPC path runs offline with configurable latency, jitter and error rate
+//   mock    - MockPredictor: instant, deterministic results without gRPC
+public interface Predictor {
+
+    static Predictor fromConfig() {
+        String backend = AppConfig.getString("predictor.backend", "vertex").toLowerCase(Locale.ROOT);
+        switch (backend) {
+            case "vertex":
+                return new VertexAIPredictor();
+            case "standin":
+                System.out.println("Using stand-in prediction backend");
+                return VertexAIPredictor.withStandIns(StandInPredictionService.listFromConfig());
+            case "mock":
+                System.out.println("Using mock predictor");
+                return new MockPredictor();
+            default:
+                throw new IllegalArgumentException("Unknown predictor.backend: " + backend);
+        }
+    }
+
+    PredictionResult predictSkinDisease(File imageFile) throws Exception;
+
+    CompletableFuture<PredictionResult> predictSkinDiseaseAsync(File imageFile);
+
+    // Cancelling the returned future abandons the prediction
+    CompletableFuture<PredictionResult> predictSkinDiseaseAsync(File imageFile, Duration deadline);
+
+    // Results are returned in input order
+    List<PredictionResult> predictBatch(List<File> imageFiles) throws Exception;
+
+    // Everything up to the network call, so callers can decode on their own threads
+    PreparedInstance prepare(File imageFile) throws IOException;
+
+    // Results are returned in input order
+    List<PredictionResult> predictPrepared(List<PreparedInstance> prepared);
+
+    // Largest number of images worth grouping into one predictPrepared call
+    int getMaxBatchInstances();
+
+    void close();
+}
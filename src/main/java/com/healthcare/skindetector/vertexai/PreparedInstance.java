@@ -0,0 +1,42 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.io.File;
+
+import com.google.protobuf.Value;
+import com.healthcare.skindetector.models.PredictionResult;
+
+// An image made ready for prediction by Predictor.prepare: looked up in the cache and, on a miss,
+// preprocessed and encoded. Implementations decide which of the fields they use.
+public final class PreparedInstance {
+    private final File file;
+    private final String cacheKey;
+    private final PredictionResult cached;
+    private final Value instance;
+
+    PreparedInstance(File file, String cacheKey, PredictionResult cached, Value instance) {
+        this.file = file;
+        this.cacheKey = cacheKey;
+        this.cached = cached;
+        this.instance = instance;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public boolean isCached() {
+        return cached != null;
+    }
+
+    String getCacheKey() {
+        return cacheKey;
+    }
+
+    PredictionResult getCached() {
+        return cached;
+    }
+
+    Value getInstance() {
+        return instance;
+    }
+}
@@ -0,0 +1,235 @@
+package com.healthcare.skindetector.vertexai;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.GrpcTransportChannel;
+import com.google.api.gax.rpc.FixedTransportChannelProvider;
+import com.google.cloud.aiplatform.v1.PredictRequest;
+import com.google.cloud.aiplatform.v1.PredictResponse;
+import com.google.cloud.aiplatform.v1.PredictionServiceSettings;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.ListValue;
+import com.google.protobuf.Struct;
+import com.google.protobuf.Value;
+import com.healthcare.skindetector.utils.AppConfig;
+
+import io.grpc.ManagedChannel;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.Status;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import io.grpc.stub.StreamObserver;
+
+// In-process stand-in for a deployed Vertex AI image classification endpoint. It serves the real
+// PredictionService/Predict method over a gRPC in-process transport, so request building,
+// serialization and response parsing all run as in production, and answers after a configurable
+// delay without needing Google Cloud credentials. The same image always gets the same labels; a
+// configurable fraction of calls fails with UNAVAILABLE, like a transient backend error, and
+// another fraction is much slower than the rest, like a replica stalling in garbage collection.
+// Started on a local port instead, it is reached over real HTTP/2 connections, so channel pooling,
+// keep-alive and compression take effect as they would against Google Cloud.
+public class StandInPredictionService {
+
+    private static final String SERVICE = "google.cloud.aiplatform.v1.PredictionService";
+
+    // Declared by hand: the generated service stubs are not published for this client version
+    private static final MethodDescriptor<PredictRequest, PredictResponse> PREDICT =
+            MethodDescriptor.<PredictRequest, PredictResponse>newBuilder()
+                    .setType(MethodDescriptor.MethodType.UNARY)
+                    .setFullMethodName(MethodDescriptor.generateFullMethodName(SERVICE, "Predict"))
+                    .setRequestMarshaller(ProtoUtils.marshaller(PredictRequest.getDefaultInstance()))
+                    .setResponseMarshaller(ProtoUtils.marshaller(PredictResponse.getDefaultInstance()))
+                    .build();
+
+    private static final String[] LABELS = {
+        "Eczema", "Psoriasis", "Melanoma", "Basal Cell Carcinoma", "Acne", "Rosacea", "Vitiligo", "Tinea"
+    };
+
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double errorRate;
+    private final double slowRate;
+    private final long slowMillis;
+    private final String serverName = "vertex-stand-in-" + UUID.randomUUID();
+    // Delays are scheduled rather than slept, so thousands of calls can be in flight at once
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stand-in-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Server server;
+    private int port = -1;
+
+    // Each call takes latencyMillis plus a uniformly random extra of up to jitterMillis; errorRate
+    // is the fraction of calls (0.0 - 1.0) that fail after the same delay
+    public StandInPredictionService(long latencyMillis, long jitterMillis, double errorRate) {
+        this(latencyMillis, jitterMillis, errorRate, 0.0, 0L);
+    }
+
+    // A further slowRate of the calls (0.0 - 1.0) takes slowMillis longer
+    public StandInPredictionService(long latencyMillis, long jitterMillis, double errorRate, double slowRate,
+            long slowMillis) {
+        this.latencyMillis = latencyMillis;
+        this.jitterMillis = jitterMillis;
+        this.errorRate = errorRate;
+        this.slowRate = slowRate;
+        this.slowMillis = slowMillis;
+    }
+
+    public static StandInPredictionService fromConfig() {
+        return new StandInPredictionService(
+                AppConfig.getLong("standin.latencyMillis", 80L),
+                AppConfig.getLong("standin.jitterMillis", 40L),
+                AppConfig.getDouble("standin.errorRate", 0.0),
+                AppConfig.getDouble("standin.slowRate", 0.0),
+                AppConfig.getLong("standin.slowMillis", 2000L));
+    }
+
+    // One stand-in per profile in standin.endpoints, each written as
+    // latencyMillis[:jitterMillis[:errorRate[:slowRate[:slowMillis]]]] and separated by commas, e.g.
+    // "80:40,400:200:0.05" for a fast and a slow, flaky region; just fromConfig() when unset
+    public static List<StandInPredictionService> listFromConfig() {
+        String profiles = AppConfig.getString("standin.endpoints", null);
+        if (profiles == null) {
+            return Collections.singletonList(fromConfig());
+        }
+        List<StandInPredictionService> standIns = new ArrayList<>();
+        for (String profile : profiles.split(",")) {
+            String[] parts = profile.trim().split(":");
+            standIns.add(new StandInPredictionService(
+                    Long.parseLong(parts[0].trim()),
+                    parts.length > 1 ? Long.parseLong(parts[1].trim()) : 0L,
+                    parts.length > 2 ? Double.parseDouble(parts[2].trim()) : 0.0,
+                    parts.length > 3 ? Double.parseDouble(parts[3].trim()) : 0.0,
+                    parts.length > 4 ? Long.parseLong(parts[4].trim()) : 2000L));
+        }
+        return standIns;
+    }
+
+    public synchronized StandInPredictionService start() throws IOException {
+        server = InProcessServerBuilder.forName(serverName)
+                .directExecutor()
+                .addService(serviceDefinition())
+                .build()
+                .start();
+        return this;
+    }
+
+    // Listens for plaintext gRPC on an ephemeral loopback port, see getPort(). Accepts the
+    // keep-alive pings and compressed requests that VertexAIPredictor.channelSettings() sends.
+    public synchronized StandInPredictionService startOnLocalPort() throws IOException {
+        server = NettyServerBuilder.forAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .permitKeepAliveTime(1, TimeUnit.SECONDS)
+                .permitKeepAliveWithoutCalls(true)
+                .maxInboundMessageSize(Integer.MAX_VALUE)
+                .directExecutor()
+                .addService(serviceDefinition())
+                .build()
+                .start();
+        port = server.getPort();
+        return this;
+    }
+
+    public synchronized int getPort() {
+        return port;
+    }
+
+    private ServerServiceDefinition serviceDefinition() {
+        return ServerServiceDefinition.builder(SERVICE)
+                .addMethod(PREDICT, ServerCalls.asyncUnaryCall(this::predict))
+                .build();
+    }
+
+    // Client settings that send PredictionServiceClient calls here instead of to Google Cloud.
+    // Each call opens a new channel, which the client closes along with itself.
+    public PredictionServiceSettings clientSettings() throws IOException {
+        ManagedChannel channel = InProcessChannelBuilder.forName(serverName).build();
+        return PredictionServiceSettings.newBuilder()
+                .setTransportChannelProvider(FixedTransportChannelProvider.create(GrpcTransportChannel.create(channel)))
+                .setCredentialsProvider(NoCredentialsProvider.create())
+                .build();
+    }
+
+    private void predict(PredictRequest request, StreamObserver<PredictResponse> observer) {
+        PredictResponse.Builder response = PredictResponse.newBuilder().setDeployedModelId("stand-in");
+        for (Value instance : request.getInstancesList()) {
+            response.addPredictions(classify(instance));
+        }
+        PredictResponse built = response.build();
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMillis + (jitterMillis > 0 ? random.nextLong(jitterMillis + 1) : 0);
+        if (slowRate > 0 && random.nextDouble() < slowRate) {
+            delay += slowMillis;
+        }
+        boolean fail = errorRate > 0 && random.nextDouble() < errorRate;
+        timer.schedule(() -> {
+            try {
+                if (fail) {
+                    observer.onError(Status.UNAVAILABLE.withDescription("stand-in injected failure").asRuntimeException());
+                    return;
+                }
+                observer.onNext(built);
+                observer.onCompleted();
+            } catch (RuntimeException e) {
+                // The client cancelled or its deadline passed while the call was waiting
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    // Three labels in descending confidence, derived from the image bytes
+    private static Value classify(Value instance) {
+        ByteString content = instance.getStructValue().getFieldsOrDefault("content", Value.getDefaultInstance())
+                .getStringValueBytes();
+        int hash = content.hashCode() & Integer.MAX_VALUE;
+
+        ListValue.Builder names = ListValue.newBuilder();
+        ListValue.Builder confidences = ListValue.newBuilder();
+        for (int rank = 0; rank < 3; rank++) {
+            names.addValues(Value.newBuilder().setStringValue(label(hash, rank)));
+            confidences.addValues(Value.newBuilder().setNumberValue(confidence(hash, rank)));
+        }
+        return Value.newBuilder().setStructValue(Struct.newBuilder()
+                .putFields("displayNames", Value.newBuilder().setListValue(names).build())
+                .putFields("confidences", Value.newBuilder().setListValue(confidences).build()))
+                .build();
+    }
+
+    // Shared with MockPredictor so both offline backends produce the same kind of answer
+    static String label(int hash, int rank) {
+        return LABELS[(hash + rank) % LABELS.length];
+    }
+
+    // Top label 0.55 - 0.94, the rest of the probability split 70/30 between the next two
+    static double confidence(int hash, int rank) {
+        double top = 0.55 + (hash % 40) / 100.0;
+        switch (rank) {
+            case 0: return top;
+            case 1: return (1 - top) * 0.7;
+            default: return (1 - top) * 0.3;
+        }
+    }
+
+    public synchronized void close() {
+        if (server != null) {
+            server.shutdownNow();
+        }
+        timer.shutdownNow();
+    }
+}
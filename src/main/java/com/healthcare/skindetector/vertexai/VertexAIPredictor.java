@@ -1,147 +1,579 @@
 package com.healthcare.skindetector.vertexai;
 
 import java.io.File;
-import java.nio.file.Files;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Base64;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.ChannelPoolSettings;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
 import com.google.cloud.aiplatform.v1.EndpointName;
 import com.google.cloud.aiplatform.v1.PredictRequest;
 import com.google.cloud.aiplatform.v1.PredictResponse;
 import com.google.cloud.aiplatform.v1.PredictionServiceClient;
+import com.google.cloud.aiplatform.v1.PredictionServiceSettings;
 import com.google.protobuf.Struct;
 import com.google.protobuf.Value;
+import com.healthcare.skindetector.metrics.MetricsRegistry;
+import com.healthcare.skindetector.models.PredictionResult;
+import com.healthcare.skindetector.utils.AppConfig;
 
-public class VertexAIPredictor {
+public class VertexAIPredictor implements Predictor {
 
-    // Set your actual Vertex AI details here
-    private static final String PROJECT_ID = "YOURID";
-    private static final String LOCATION = "us-central1";
-    private static final String ENDPOINT_ID = "YOURIDFORENDPOINTS";
+    private final List<PredictionServiceClient> clients = new ArrayList<>();
+    private final PredictionRouter router;
+    // Names every endpoint in prediction cache keys, so answers are reused only for the same deployment
+    private final String endpointsKey;
+    private final int maxBatchInstances = AppConfig.getInt("vertex.batch.maxInstances", 10);
+    private final long maxBatchPayloadBytes = AppConfig.getLong("vertex.batch.maxPayloadBytes", 8_000_000L);
+    private final double confidenceThreshold = AppConfig.getDouble("vertex.confidenceThreshold", 0.5);
+    private final int maxPredictions = AppConfig.getInt("vertex.maxPredictions", 5);
+    private final ImagePreprocessor preprocessor = ImagePreprocessor.fromConfig();
+    private final PredictionCache cache =
+            AppConfig.getBoolean("vertex.cache.enabled", true) ? PredictionCache.fromConfig() : null;
 
-    private final PredictionServiceClient predictionServiceClient;
-    private final EndpointName endpointName;
+    // Budget of every prediction, covering its retries and hedged copies
+    private final Duration defaultDeadline = Duration.ofMillis(AppConfig.getLong("vertex.deadlineMillis", 30_000L));
+    // Retry backoffs and hedge delays are timers, so no thread waits them out
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "vertex-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
 
+    // Async calls beyond the in-flight cap wait in a queue instead of occupying a thread
+    private final int maxInFlight = AppConfig.getInt("vertex.async.maxInFlight", 4);
+    private final Semaphore inFlightPermits = new Semaphore(maxInFlight);
+    private final Queue<AsyncCall> pendingCalls = new ConcurrentLinkedQueue<>();
+    private final ExecutorService requestExecutor = Executors.newFixedThreadPool(maxInFlight, runnable -> {
+        Thread thread = new Thread(runnable, "vertex-request");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Owned stand-in backends, shut down with this predictor
+    private List<StandInPredictionService> standIns = Collections.emptyList();
+
+    // Connects to every endpoint in vertex.endpoints, or to the single vertex.location /
+    // vertex.endpointId endpoint when it is unset
     public VertexAIPredictor() {
+        this(endpointsFromConfig(), Collections.emptyList());
+    }
+
+    // One client per endpoint. Settings redirect a client, e.g. to a StandInPredictionService;
+    // endpoints without settings connect to the Vertex AI API of their own region.
+    private VertexAIPredictor(List<EndpointName> endpoints, List<PredictionServiceSettings> settings) {
+        List<PredictionInvoker> invokers = new ArrayList<>();
         try {
-            predictionServiceClient = PredictionServiceClient.create();
-            endpointName = EndpointName.of(PROJECT_ID, LOCATION, ENDPOINT_ID);
+            for (int i = 0; i < endpoints.size(); i++) {
+                EndpointName endpoint = endpoints.get(i);
+                PredictionServiceClient client = PredictionServiceClient.create(i < settings.size()
+                        ? settings.get(i)
+                        : channelSettings(endpoint.getLocation() + "-aiplatform.googleapis.com:443", false));
+                clients.add(client);
+                invokers.add(new PredictionInvoker(endpoint, client.predictCallable(), retryScheduler));
+            }
         } catch (Exception e) {
+            clients.forEach(PredictionServiceClient::close);
+            retryScheduler.shutdownNow();
             throw new RuntimeException("Could not initialize Vertex AI client: " + e.getMessage(), e);
         }
+        router = new PredictionRouter(invokers);
+        endpointsKey = endpoints.size() == 1 ? endpoints.get(0).toString() : endpoints.toString();
     }
 
-    public String predictSkinDisease(File imageFile) throws Exception {
-        // Read image and encode as base64
-        byte[] imageBytes = Files.readAllBytes(imageFile.toPath());
-        String encodedImage = Base64.getEncoder().encodeToString(imageBytes);
+    // Client settings for a pool of vertex.grpc.channelPoolSize connections to target. Keep-alive
+    // pings hold idle connections open through proxies and NAT, so a burst after a quiet spell does
+    // not start with reconnects; plaintext without credentials is for a stand-in on a local port.
+    // Request compression and the outbound size limit are per call, see PredictionInvoker.
+    static PredictionServiceSettings channelSettings(String target, boolean plaintext) throws IOException {
+        InstantiatingGrpcChannelProvider.Builder channels = PredictionServiceSettings.defaultGrpcTransportProviderBuilder()
+                .setEndpoint(target)
+                .setChannelPoolSettings(ChannelPoolSettings.staticallySized(
+                        Math.max(1, AppConfig.getInt("vertex.grpc.channelPoolSize", 4))))
+                .setMaxInboundMessageSize(AppConfig.getInt("vertex.grpc.maxInboundMessageBytes", 16 * 1024 * 1024));
+        long keepAliveSeconds = AppConfig.getLong("vertex.grpc.keepAliveSeconds", 60L);
+        if (keepAliveSeconds > 0) {
+            channels.setKeepAliveTime(org.threeten.bp.Duration.ofSeconds(keepAliveSeconds))
+                    .setKeepAliveTimeout(org.threeten.bp.Duration.ofSeconds(
+                            AppConfig.getLong("vertex.grpc.keepAliveTimeoutSeconds", 20L)))
+                    .setKeepAliveWithoutCalls(true);
+        }
+        PredictionServiceSettings.Builder settings = PredictionServiceSettings.newBuilder();
+        if (plaintext) {
+            channels.setChannelConfigurator(builder -> builder.usePlaintext());
+            settings.setCredentialsProvider(NoCredentialsProvider.create());
+        }
+        return settings.setTransportChannelProvider(channels.build()).build();
+    }
 
-        // Build instance: {"content": "base64_string"}
-        Map<String, Value> instanceFields = new HashMap<>();
-        instanceFields.put("content", Value.newBuilder().setStringValue(encodedImage).build());
-        
-        Value instance = Value.newBuilder()
-                .setStructValue(Struct.newBuilder().putAllFields(instanceFields))
-                .build();
+    // vertex.endpoints lists location/endpointId pairs in vertex.projectId, separated by commas
+    private static List<EndpointName> endpointsFromConfig() {
+        String projectId = AppConfig.getString("vertex.projectId", "YOURID");
+        String configured = AppConfig.getString("vertex.endpoints", null);
+        if (configured == null) {
+            return Collections.singletonList(EndpointName.of(projectId,
+                    AppConfig.getString("vertex.location", "us-central1"),
+                    AppConfig.getString("vertex.endpointId", "YOURIDFORENDPOINTS")));
+        }
+        List<EndpointName> endpoints = new ArrayList<>();
+        for (String endpoint : configured.split(",")) {
+            String[] parts = endpoint.trim().split("/");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("vertex.endpoints entries must be location/endpointId, got: " + endpoint);
+            }
+            endpoints.add(EndpointName.of(projectId, parts[0], parts[1]));
+        }
+        return endpoints;
+    }
+
+    @Override
+    public PredictionResult predictSkinDisease(File imageFile) throws Exception {
+        String cacheKey = cacheKey(imageFile);
+        PredictionResult cached = cachedResult(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+
+        PredictRequest request = buildRequest(Collections.singletonList(prepareInstance(imageFile)));
+
+        // Get prediction response
+        PredictionCallEvent event = beginCall(request, "predictSkinDisease", false, defaultDeadline.toMillis());
+        long start = System.nanoTime();
+        PredictResponse response;
+        try {
+            response = await(router.call(request, defaultDeadline, event));
+        } catch (RuntimeException e) {
+            endCall(event, null, e);
+            throw e;
+        }
+        long latencyNanos = System.nanoTime() - start;
+
+        PredictionResult result = parseSingle(response, event.endpoint, latencyNanos);
+        endCall(event, response, null);
+        return cacheResult(cacheKey, result);
+    }
+
+    @Override
+    public CompletableFuture<PredictionResult> predictSkinDiseaseAsync(File imageFile) {
+        return predictSkinDiseaseAsync(imageFile, defaultDeadline);
+    }
+
+    // Cancelling the returned future drops a queued call or cancels the running gRPC call
+    @Override
+    public CompletableFuture<PredictionResult> predictSkinDiseaseAsync(File imageFile, Duration deadline) {
+        AsyncCall call = new AsyncCall(imageFile, deadline);
+        pendingCalls.add(call);
+        dispatchPendingCalls();
+        return call.result;
+    }
+
+    private void dispatchPendingCalls() {
+        while (!pendingCalls.isEmpty() && inFlightPermits.tryAcquire()) {
+            AsyncCall call = pendingCalls.poll();
+            if (call == null) {
+                // Another thread took the last call; give the permit back and re-check the queue
+                inFlightPermits.release();
+                continue;
+            }
+            if (call.result.isDone()) {
+                inFlightPermits.release();
+                continue;
+            }
+            try {
+                requestExecutor.execute(call);
+            } catch (RejectedExecutionException e) {
+                call.result.completeExceptionally(closed());
+                inFlightPermits.release();
+            }
+        }
+    }
+
+    private static CancellationException closed() {
+        return new CancellationException("Predictor is closed");
+    }
+
+    private final class AsyncCall implements Runnable {
+        private final File imageFile;
+        private final Duration deadline;
+        private final CompletableFuture<PredictionResult> result = new CompletableFuture<>();
+        private volatile CompletableFuture<PredictResponse> rpc;
+
+        AsyncCall(File imageFile, Duration deadline) {
+            this.imageFile = imageFile;
+            this.deadline = deadline;
+            result.whenComplete((prediction, error) -> {
+                CompletableFuture<PredictResponse> running = rpc;
+                if (result.isCancelled() && running != null) {
+                    running.cancel(true);
+                }
+            });
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (result.isDone()) {
+                    finish();
+                    return;
+                }
+                String cacheKey = cacheKey(imageFile);
+                PredictionResult cached = cachedResult(cacheKey);
+                if (cached != null) {
+                    result.complete(cached);
+                    finish();
+                    return;
+                }
+                PredictRequest request = buildRequest(Collections.singletonList(prepareInstance(imageFile)));
+
+                PredictionCallEvent event = beginCall(request, "predictSkinDiseaseAsync", true,
+                        deadline.toMillis());
+                long start = System.nanoTime();
+                rpc = router.call(request, deadline, event);
+                // Cancelled while the request was being built
+                if (result.isCancelled()) {
+                    rpc.cancel(true);
+                }
+
+                rpc.whenComplete((response, error) -> {
+                    if (error != null) {
+                        endCall(event, null, error);
+                        result.completeExceptionally(error);
+                        finish();
+                        return;
+                    }
+                    try {
+                        long latencyNanos = System.nanoTime() - start;
+                        PredictionResult prediction = parseSingle(response, event.endpoint, latencyNanos);
+                        endCall(event, response, null);
+                        result.complete(cacheResult(cacheKey, prediction));
+                    } catch (RuntimeException e) {
+                        endCall(event, response, e);
+                        result.completeExceptionally(e);
+                    }
+                    finish();
+                });
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+                finish();
+            }
+        }
+
+        private void finish() {
+            inFlightPermits.release();
+            dispatchPendingCalls();
+        }
+    }
+
+    // Vertex client talking to freshly started stand-in backends. A single stand-in takes the place
+    // of the configured endpoint; several are routed between as regions standin-1, -2, ... With
+    // standin.transport=tcp they listen on local ports and are reached through the same channel
+    // pool, keep-alive and compression settings as Vertex AI; otherwise in-process.
+    static VertexAIPredictor withStandIns(List<StandInPredictionService> standIns) {
+        boolean tcp = "tcp".equalsIgnoreCase(AppConfig.getString("standin.transport", "inprocess").trim());
+        try {
+            EndpointName configured = endpointsFromConfig().get(0);
+            List<EndpointName> endpoints = new ArrayList<>();
+            List<PredictionServiceSettings> settings = new ArrayList<>();
+            for (int i = 0; i < standIns.size(); i++) {
+                StandInPredictionService standIn = standIns.get(i);
+                endpoints.add(standIns.size() == 1 ? configured
+                        : EndpointName.of(configured.getProject(), "standin-" + (i + 1), configured.getEndpoint()));
+                if (tcp) {
+                    standIn.startOnLocalPort();
+                    settings.add(channelSettings("localhost:" + standIn.getPort(), true));
+                } else {
+                    settings.add(standIn.start().clientSettings());
+                }
+            }
+            VertexAIPredictor predictor = new VertexAIPredictor(endpoints, settings);
+            predictor.standIns = standIns;
+            return predictor;
+        } catch (IOException | RuntimeException e) {
+            standIns.forEach(StandInPredictionService::close);
+            throw new RuntimeException("Could not start stand-in prediction backend: " + e.getMessage(), e);
+        }
+    }
+
+    // Packs several images into each PredictRequest; results are returned in input order.
+    // Images already in the prediction cache are answered locally and never sent.
+    @Override
+    public List<PredictionResult> predictBatch(List<File> imageFiles) throws Exception {
+        PredictionResult[] results = new PredictionResult[imageFiles.size()];
+        BatchBuilder batch = new BatchBuilder(results);
+        // Prepared one at a time so at most one request's worth of encoded images is on the heap
+        for (int i = 0; i < imageFiles.size(); i++) {
+            batch.add(i, prepare(imageFiles.get(i)));
+        }
+        batch.flush();
+        return Arrays.asList(results);
+    }
+
+    // Cache lookup plus preprocessing and encoding, without any network call. Lets callers decode
+    // on their own threads and hand the results to predictPrepared.
+    @Override
+    public PreparedInstance prepare(File imageFile) throws IOException {
+        String cacheKey = cacheKey(imageFile);
+        PredictionResult cached = cachedResult(cacheKey);
+        return new PreparedInstance(imageFile, cacheKey, cached, cached == null ? prepareInstance(imageFile) : null);
+    }
+
+    // Same batching rules as predictBatch; results are returned in input order
+    @Override
+    public List<PredictionResult> predictPrepared(List<PreparedInstance> prepared) {
+        PredictionResult[] results = new PredictionResult[prepared.size()];
+        BatchBuilder batch = new BatchBuilder(results);
+        for (int i = 0; i < prepared.size(); i++) {
+            batch.add(i, prepared.get(i));
+        }
+        batch.flush();
+        return Arrays.asList(results);
+    }
+
+    // Collects uncached instances and sends them whenever the next one would exceed either limit
+    private final class BatchBuilder {
+        private final PredictionResult[] results;
+        private final List<Value> instances = new ArrayList<>();
+        private final List<Integer> indexes = new ArrayList<>();
+        private final List<String> cacheKeys = new ArrayList<>();
+        private long payloadBytes;
+
+        BatchBuilder(PredictionResult[] results) {
+            this.results = results;
+        }
+
+        void add(int index, PreparedInstance prepared) {
+            if (prepared.getCached() != null) {
+                results[index] = prepared.getCached();
+                return;
+            }
+            long instanceBytes = prepared.getInstance().getSerializedSize();
+            if (!instances.isEmpty()
+                    && (instances.size() >= maxBatchInstances || payloadBytes + instanceBytes > maxBatchPayloadBytes)) {
+                flush();
+            }
+            instances.add(prepared.getInstance());
+            indexes.add(index);
+            cacheKeys.add(prepared.getCacheKey());
+            payloadBytes += instanceBytes;
+        }
+
+        void flush() {
+            if (instances.isEmpty()) {
+                return;
+            }
+            predictInstances(instances, indexes, cacheKeys, results);
+            instances.clear();
+            indexes.clear();
+            cacheKeys.clear();
+            payloadBytes = 0;
+        }
+    }
+
+    private void predictInstances(List<Value> instances, List<Integer> indexes, List<String> cacheKeys,
+            PredictionResult[] results) {
+        PredictRequest request = buildRequest(instances);
+        PredictionCallEvent event = beginCall(request, "predictBatch", false, defaultDeadline.toMillis());
+        long start = System.nanoTime();
+        PredictResponse response;
+        try {
+            response = await(router.call(request, defaultDeadline, event));
+        } catch (RuntimeException e) {
+            endCall(event, null, e);
+            throw e;
+        }
+        long latencyNanos = System.nanoTime() - start;
+
+        // Vertex returns one prediction per instance, in request order
+        if (response.getPredictionsCount() != instances.size()) {
+            IllegalStateException e = new IllegalStateException("Expected " + instances.size()
+                    + " predictions but endpoint returned " + response.getPredictionsCount());
+            endCall(event, response, e);
+            throw e;
+        }
 
-        List<Value> instances = new ArrayList<>();
-        instances.add(instance);
+        for (int i = 0; i < instances.size(); i++) {
+            results[indexes.get(i)] = cacheResult(cacheKeys.get(i),
+                    parsePrediction(response.getPredictions(i), event.endpoint, latencyNanos));
+        }
+        endCall(event, response, null);
+    }
+
+    // Blocking callers get the same exceptions the plain client call would have thrown
+    private static PredictResponse await(CompletableFuture<PredictResponse> call) {
+        try {
+            return call.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            call.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a prediction", e);
+        }
+    }
+
+    // Begun just before the request is sent and committed once the response is parsed or the call
+    // failed; the request size is memoized by protobuf, so reading it here costs nothing extra.
+    // Every call is also timed into the "prediction" metrics, whether or not JFR is recording, and
+    // the router notes on the event which endpoint served it.
+    private static PredictionCallEvent beginCall(PredictRequest request, String operation, boolean async,
+            long deadlineMillis) {
+        PredictionCallEvent event = new PredictionCallEvent();
+        event.timer = MetricsRegistry.getInstance().timer("prediction", operation);
+        event.startNanos = System.nanoTime();
+        event.begin();
+        if (event.isEnabled()) {
+            event.async = async;
+            event.deadlineMillis = deadlineMillis;
+            event.instances = request.getInstancesCount();
+            event.requestBytes = request.getSerializedSize();
+        }
+        return event;
+    }
+
+    private static void endCall(PredictionCallEvent event, PredictResponse response, Throwable error) {
+        event.timer.recordSince(event.startNanos, error == null);
+        if (event.shouldCommit()) {
+            event.predictions = response != null ? response.getPredictionsCount() : 0;
+            event.error = error != null ? error.toString() : null;
+            event.commit();
+        }
+    }
+
+    @Override
+    public int getMaxBatchInstances() {
+        return maxBatchInstances;
+    }
 
+    public PredictionCache getCache() {
+        return cache;
+    }
+
+    private String cacheKey(File imageFile) throws IOException {
+        return cache != null
+                ? PredictionCache.key(imageFile.toPath(), confidenceThreshold, maxPredictions, endpointsKey,
+                        preprocessor.describe())
+                : null;
+    }
+
+    private PredictionResult cachedResult(String cacheKey) {
+        return cache != null ? cache.get(cacheKey) : null;
+    }
+
+    private PredictionResult cacheResult(String cacheKey, PredictionResult result) {
+        // Empty or unreadable responses usually mean a broken deployment, so they are not worth remembering
+        if (cache != null && result.hasPrediction()) {
+            cache.put(cacheKey, result);
+        }
+        return result;
+    }
+
+    private Value prepareInstance(File imageFile) throws IOException {
+        ImagePreprocessor.PreparedImage prepared = preprocessor.prepare(imageFile.toPath());
+        // Originals are streamed from disk so the raw file never has to sit on the heap
+        return prepared.isOriginal()
+                ? InstanceEncoder.encode(imageFile.toPath())
+                : InstanceEncoder.encode(prepared.getBytes(), prepared.getOriginalLength());
+    }
+
+    // Package-private for PredictionPathBenchmark
+    PredictRequest buildRequest(List<Value> instances) {
         // Build parameters
         Map<String, Value> parametersFields = new HashMap<>();
-        parametersFields.put("confidenceThreshold", Value.newBuilder().setNumberValue(0.5).build());
-        parametersFields.put("maxPredictions", Value.newBuilder().setNumberValue(5).build());
-        
+        parametersFields.put("confidenceThreshold", Value.newBuilder().setNumberValue(confidenceThreshold).build());
+        parametersFields.put("maxPredictions", Value.newBuilder().setNumberValue(maxPredictions).build());
+
         Value parameters = Value.newBuilder()
                 .setStructValue(Struct.newBuilder().putAllFields(parametersFields))
                 .build();
 
-        // Build prediction request
-        PredictRequest request = PredictRequest.newBuilder()
-                .setEndpoint(endpointName.toString())
+        // Build prediction request; the endpoint is filled in by whichever one the router picks
+        return PredictRequest.newBuilder()
                 .addAllInstances(instances)
                 .setParameters(parameters)
                 .build();
+    }
 
-        // Get prediction response
-        PredictResponse response = predictionServiceClient.predict(request);
+    PredictionResult parseSingle(PredictResponse response, String endpoint, long latencyNanos) {
+        if (response.getPredictionsCount() == 0) {
+            return new PredictionResult(new String[0], new float[0], endpoint, latencyNanos,
+                    LocalDateTime.now(), false, null);
+        }
+        return parsePrediction(response.getPredictions(0), endpoint, latencyNanos);
+    }
 
-        // Parse the response properly with safety checks
-        StringBuilder result = new StringBuilder();
-        result.append("SKIN DISEASE ANALYSIS RESULTS\n");
-        result.append("=====================================\n\n");
+    // Classification output: {"displayNames": [...], "confidences": [...]} sorted by confidence
+    private PredictionResult parsePrediction(Value prediction, String endpoint, long latencyNanos) {
+        List<Value> displayNames = Collections.emptyList();
+        List<Value> confidences = Collections.emptyList();
 
-        if (response.getPredictionsCount() == 0) {
-            result.append("⚠️ No predictions returned from the model.\n");
-            result.append("Please check if the endpoint is properly deployed.\n");
-            return result.toString();
-        }
-
-        for (Value prediction : response.getPredictionsList()) {
-            if (prediction.hasStructValue()) {
-                Struct struct = prediction.getStructValue();
-                
-                String diseaseName = "Unknown";
-                double confidence = 0.0;
-                
-                // Extract display names (disease names) with safety check
-                if (struct.containsFields("displayNames")) {
-                    Value displayNames = struct.getFieldsMap().get("displayNames");
-                    if (displayNames.hasListValue() && displayNames.getListValue().getValuesCount() > 0) {
-                        diseaseName = displayNames.getListValue().getValues(0).getStringValue();
-                    }
-                }
-                
-                // Extract confidence scores with safety check
-                if (struct.containsFields("confidences")) {
-                    Value confidences = struct.getFieldsMap().get("confidences");
-                    if (confidences.hasListValue() && confidences.getListValue().getValuesCount() > 0) {
-                        confidence = confidences.getListValue().getValues(0).getNumberValue();
-                    }
-                }
-                
-                // Only display if we got valid results
-                if (!diseaseName.equals("Unknown")) {
-                    result.append("🔍 Detected Condition: ").append(diseaseName).append("\n\n");
-                    
-                    int confidencePercent = (int) Math.round(confidence * 100);
-                    result.append("📊 Confidence Level: ").append(confidencePercent).append("%\n\n");
-                    
-                    // Add confidence interpretation
-                    if (confidencePercent >= 90) {
-                        result.append("✅ Reliability: Very High\n\n");
-                    } else if (confidencePercent >= 75) {
-                        result.append("✅ Reliability: High\n\n");
-                    } else if (confidencePercent >= 60) {
-                        result.append("⚠️ Reliability: Moderate\n\n");
-                    } else {
-                        result.append("⚠️ Reliability: Low - Consider retaking image\n\n");
-                    }
-                } else {
-                    result.append("⚠️ Unable to extract prediction from response.\n\n");
-                    result.append("Raw response:\n").append(prediction.toString()).append("\n\n");
-                }
+        if (prediction.hasStructValue()) {
+            Map<String, Value> fields = prediction.getStructValue().getFieldsMap();
+            Value names = fields.get("displayNames");
+            if (names != null && names.hasListValue()) {
+                displayNames = names.getListValue().getValuesList();
+            }
+            Value scores = fields.get("confidences");
+            if (scores != null && scores.hasListValue()) {
+                confidences = scores.getListValue().getValuesList();
             }
         }
-        
-        // Add professional disclaimer
-        result.append("⚕️ IMPORTANT MEDICAL DISCLAIMER:\n");
-        result.append("This AI analysis is for informational purposes only.\n");
-        result.append("Please consult with a qualified dermatologist or\n");
-        result.append("healthcare professional for proper medical diagnosis\n");
-        result.append("and treatment recommendations.\n\n");
-        
-        result.append("🕒 Analysis Time: ").append(java.time.LocalDateTime.now()).append("\n");
-        
-        return result.toString();
+
+        int count = displayNames.size();
+        String[] labels = new String[count];
+        float[] scores = new float[count];
+        for (int i = 0; i < count; i++) {
+            labels[i] = displayNames.get(i).getStringValue();
+            scores[i] = i < confidences.size() ? (float) confidences.get(i).getNumberValue() : 0f;
+        }
+
+        return new PredictionResult(labels, scores, endpoint, latencyNanos, LocalDateTime.now(),
+                false, count == 0 ? prediction.toString() : null);
     }
 
+    @Override
     public void close() {
-        if (predictionServiceClient != null) {
-            predictionServiceClient.close();
+        if (cache != null) {
+            System.out.println("Prediction cache: " + cache.getStats());
+        }
+        System.out.println("Preprocessing saved " + preprocessor.getBytesSavedTotal() + " upload bytes");
+        // Calls queued on the executor or waiting for a permit fail instead of never completing
+        for (Runnable queued : requestExecutor.shutdownNow()) {
+            ((AsyncCall) queued).result.completeExceptionally(closed());
+        }
+        AsyncCall call;
+        while ((call = pendingCalls.poll()) != null) {
+            call.result.completeExceptionally(closed());
+        }
+        // Retries still waiting out their backoff fail now instead of never completing
+        for (Runnable waiting : retryScheduler.shutdownNow()) {
+            waiting.run();
         }
+        clients.forEach(PredictionServiceClient::close);
+        standIns.forEach(StandInPredictionService::close);
     }
 }